@@ -0,0 +1,53 @@
+package com.learnwiremock.cache;
+
+import com.learnwiremock.dto.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+public class MovieLookupBenchmark {
+
+    @Param({"10000", "1000000"})
+    int movies;
+
+    LongConcurrentHashMap<Movie> longMap;
+    ConcurrentHashMap<Integer, Movie> boxedMap;
+
+    @Setup
+    public void setUp() {
+        longMap = new LongConcurrentHashMap<>(movies);
+        boxedMap = new ConcurrentHashMap<>(movies);
+        for (int id = 1; id <= movies; id++) {
+            Movie movie = new Movie((long) id, "Movie " + id, "Christian Bale, Heath Ledger , Michael Caine", 2008, LocalDate.of(2008, 7, 18));
+            longMap.put(id, movie);
+            boxedMap.put(id, movie);
+        }
+    }
+
+    @Benchmark
+    public Movie longKeyedGet() {
+        int id = ThreadLocalRandom.current().nextInt(movies) + 1;
+        return longMap.get(id);
+    }
+
+    @Benchmark
+    public Movie boxedKeyedGet() {
+        Integer id = ThreadLocalRandom.current().nextInt(movies) + 1;
+        return boxedMap.get(id);
+    }
+}
@@ -0,0 +1,84 @@
+package com.learnwiremock.codec;
+
+import com.learnwiremock.dto.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body cost of a bulk ingest of {@code movies} adds, each sent {@code attempts} times: the
+ * Jackson encoder run on every attempt, as syncBody(movie) does, against encoding once by hand and
+ * wrapping the same bytes for every attempt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieEncodeBenchmark {
+
+    private static final ResolvableType MOVIE_TYPE = ResolvableType.forClass(Movie.class);
+
+    @Param({"1000"})
+    int movies;
+
+    @Param({"1", "3"})
+    int attempts;
+
+    List<Movie> batch;
+    Jackson2JsonEncoder jacksonEncoder;
+    DataBufferFactory bufferFactory;
+
+    @Setup
+    public void setUp() {
+        batch = new ArrayList<>(movies);
+        for (int id = 1; id <= movies; id++) {
+            batch.add(new Movie(null, "Movie " + id, "Christian Bale, Heath Ledger , Michael Caine, Gary Oldman, Aaron Eckhart",
+                    2008, LocalDate.of(2008, 7, 18)));
+        }
+        jacksonEncoder = new Jackson2JsonEncoder();
+        bufferFactory = new DefaultDataBufferFactory();
+    }
+
+    @Benchmark
+    public void jacksonPerAttempt(Blackhole blackhole) {
+        for (Movie movie : batch) {
+            for (int attempt = 0; attempt < attempts; attempt++) {
+                DataBuffer body = jacksonEncoder.encode(Mono.just(movie), bufferFactory, MOVIE_TYPE,
+                        MediaType.APPLICATION_JSON, Collections.emptyMap()).blockFirst();
+                blackhole.consume(body.readableByteCount());
+                DataBufferUtils.release(body);
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodedOnce(Blackhole blackhole) {
+        for (Movie movie : batch) {
+            byte[] encoded = MovieJsonEncoder.encode(movie);
+            for (int attempt = 0; attempt < attempts; attempt++) {
+                DataBuffer body = bufferFactory.wrap(encoded);
+                blackhole.consume(body.readableByteCount());
+                DataBufferUtils.release(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.learnwiremock.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.MovieField;
+import com.learnwiremock.dto.MovieView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost of a list response: full Movie binding against the projected decoder, on the full
+ * payload (service ignores {@code fields}) and on the projected payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieProjectionBenchmark {
+
+    private static final Set<MovieField> ID_AND_NAME = EnumSet.of(MovieField.MOVIE_ID, MovieField.NAME);
+
+    @Param({"1000"})
+    int movies;
+
+    byte[] fullPayload;
+    byte[] projectedPayload;
+    ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        StringBuilder full = new StringBuilder("[");
+        StringBuilder projected = new StringBuilder("[");
+        for (int id = 1; id <= movies; id++) {
+            String separator = id > 1 ? "," : "";
+            full.append(separator).append("{\"movie_id\":").append(id).
+                    append(",\"name\":\"Movie ").append(id).append('"').
+                    append(",\"year\":2008").
+                    append(",\"cast\":\"Christian Bale, Heath Ledger , Michael Caine, Gary Oldman, Aaron Eckhart\"").
+                    append(",\"release_date\":\"2008-07-18\"}");
+            projected.append(separator).append("{\"movie_id\":").append(id).
+                    append(",\"name\":\"Movie ").append(id).append("\"}");
+        }
+        fullPayload = full.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        projectedPayload = projected.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule()).
+                disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Benchmark
+    public List<Movie> fullBinding() throws IOException {
+        return objectMapper.readValue(fullPayload, new TypeReference<List<Movie>>() { });
+    }
+
+    @Benchmark
+    public List<MovieView> projectedDecoderOnFullPayload() throws IOException {
+        return MovieProjectionDecoder.decodeList(fullPayload, ID_AND_NAME);
+    }
+
+    @Benchmark
+    public List<MovieView> projectedDecoderOnProjectedPayload() throws IOException {
+        return MovieProjectionDecoder.decodeList(projectedPayload, ID_AND_NAME);
+    }
+}
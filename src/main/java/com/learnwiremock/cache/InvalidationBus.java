@@ -0,0 +1,33 @@
+package com.learnwiremock.cache;
+
+import java.io.Closeable;
+import java.util.function.LongConsumer;
+
+/**
+ * Carries movie ids that changed between client instances, so each can drop what its own
+ * {@link MovieCache} holds for them instead of serving it until the TTL runs out.
+ */
+public interface InvalidationBus extends Closeable {
+
+    /**
+     * Queues the id for the other instances. Implementations may batch and may lose ids, so the
+     * cache TTL stays the upper bound on staleness.
+     */
+    void publish(long movieId);
+
+    /**
+     * Queues the id of a movie this instance added, so the others forget the misses it may answer.
+     */
+    void publishAdded(long movieId);
+
+    /**
+     * Registers a listener for ids published by other instances. It is not called for ids this
+     * instance published.
+     */
+    void subscribe(LongConsumer listener);
+
+    /**
+     * Registers a listener for ids of movies other instances added.
+     */
+    void subscribeAdded(LongConsumer listener);
+}
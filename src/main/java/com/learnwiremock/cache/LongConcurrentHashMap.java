@@ -0,0 +1,221 @@
+package com.learnwiremock.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Concurrent map keyed by primitive {@code long}, so lookups never box the key.
+ * Entries live in open-addressing tables split into segments: reads are lock-free,
+ * writes lock only the segment owning the key.
+ */
+public class LongConcurrentHashMap<V> {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final Object TOMBSTONE = new Object();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public LongConcurrentHashMap() {
+        this(64);
+    }
+
+    public LongConcurrentHashMap(int expectedSize) {
+        int perSegment = Math.max(2, expectedSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(tableSizeFor(perSegment));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = mix(key);
+        Object value = segmentFor(hash).table.find(key, hash);
+        return value == TOMBSTONE ? null : (V) value;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long hash = mix(key);
+        return (V) segmentFor(hash).put(key, hash, value, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long hash = mix(key);
+        return (V) segmentFor(hash).put(key, hash, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        long hash = mix(key);
+        return (V) segmentFor(hash).remove(key, hash, null);
+    }
+
+    public boolean remove(long key, V expected) {
+        long hash = mix(key);
+        return expected != null && segmentFor(hash).remove(key, hash, expected) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.live;
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Visits the live entries without locking. Entries written or removed during the walk may or
+     * may not be seen.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<V> action) {
+        for (Segment segment : segments) {
+            Table t = segment.table;
+            for (int i = 0; i < t.keys.length; i++) {
+                Object value = t.values.get(i);
+                if (value != null && value != TOMBSTONE) {
+                    action.accept((V) value, t.keys[i]);
+                }
+            }
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static int tableSizeFor(int entries) {
+        int capacity = Integer.highestOneBit(Math.max(2, entries * 2 - 1));
+        return capacity < entries * 2 ? capacity << 1 : capacity;
+    }
+
+    private static final class Table {
+        // a slot is empty while its value is null; keys are written before the value is published
+        final long[] keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        Object find(long key, long hash) {
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                Object value = values.get(i);
+                if (value == null) {
+                    return null;
+                }
+                if (keys[i] == key) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        volatile Table table;
+        volatile int live;
+        int used;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        synchronized Object put(long key, long hash, Object value, boolean onlyIfAbsent) {
+            Table t = table;
+            for (int i = (int) hash & t.mask; ; i = (i + 1) & t.mask) {
+                Object current = t.values.get(i);
+                if (current == null) {
+                    t.keys[i] = key;
+                    t.values.set(i, value);
+                    live++;
+                    if (++used * 4 > t.keys.length * 3) {
+                        resize();
+                    }
+                    return null;
+                }
+                if (t.keys[i] == key) {
+                    if (current == TOMBSTONE) {
+                        t.values.set(i, value);
+                        live++;
+                        return null;
+                    }
+                    if (!onlyIfAbsent) {
+                        t.values.set(i, value);
+                    }
+                    return current;
+                }
+            }
+        }
+
+        synchronized Object remove(long key, long hash, Object expected) {
+            Table t = table;
+            for (int i = (int) hash & t.mask; ; i = (i + 1) & t.mask) {
+                Object current = t.values.get(i);
+                if (current == null) {
+                    return null;
+                }
+                if (t.keys[i] == key) {
+                    if (current == TOMBSTONE || (expected != null && current != expected)) {
+                        return null;
+                    }
+                    t.values.set(i, TOMBSTONE);
+                    live--;
+                    return current;
+                }
+            }
+        }
+
+        synchronized void clear() {
+            table = new Table(table.keys.length);
+            live = 0;
+            used = 0;
+        }
+
+        private void resize() {
+            Table old = table;
+            Table grown = new Table(tableSizeFor(Math.max(live, 1) * 2));
+            for (int i = 0; i < old.keys.length; i++) {
+                Object value = old.values.get(i);
+                if (value == null || value == TOMBSTONE) {
+                    continue;
+                }
+                long key = old.keys[i];
+                int slot = (int) mix(key) & grown.mask;
+                while (grown.values.get(slot) != null) {
+                    slot = (slot + 1) & grown.mask;
+                }
+                grown.keys[slot] = key;
+                grown.values.lazySet(slot, value);
+            }
+            used = live;
+            // readers holding the old table still see a consistent snapshot
+            table = grown;
+        }
+    }
+}
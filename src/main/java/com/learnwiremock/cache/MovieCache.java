@@ -0,0 +1,315 @@
+package com.learnwiremock.cache;
+
+import com.learnwiremock.dto.MovieValue;
+import com.learnwiremock.exception.MovieFailure;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Client side cache for movie lookups. An entry is fresh for {@code ttl}; after that it may still be
+ * served while it is revalidated in the background ({@code staleWhileRevalidate}) or when the service
+ * fails ({@code staleIfError}). Movies are kept as {@link MovieValue}s, so entries are handed out
+ * without copying. Lookups the service answered with 404 are remembered for {@code negativeTtl}.
+ */
+public class MovieCache {
+
+    private final LongConcurrentHashMap<Entry<MovieValue>> moviesById = new LongConcurrentHashMap<>(1024);
+    private final ConcurrentHashMap<String, Entry<List<MovieValue>>> moviesByName = new ConcurrentHashMap<>();
+    private final LongConcurrentHashMap<Entry<List<MovieValue>>> moviesByYear = new LongConcurrentHashMap<>();
+
+    private final LongConcurrentHashMap<Miss> missingIds = new LongConcurrentHashMap<>(1024);
+    private final ConcurrentHashMap<String, Miss> missingNames = new ConcurrentHashMap<>();
+    private final LongConcurrentHashMap<Miss> missingYears = new LongConcurrentHashMap<>();
+
+    private final long ttlNanos;
+    private final long staleWhileRevalidateNanos;
+    private final long staleIfErrorNanos;
+    private final long negativeTtlNanos;
+
+    private final LongAdder staleServes = new LongAdder();
+    private final LongAdder staleIfErrorServes = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    public MovieCache(Duration ttl) {
+        this(ttl, Duration.ZERO, Duration.ZERO);
+    }
+
+    public MovieCache(Duration ttl, Duration staleWhileRevalidate, Duration staleIfError) {
+        this(ttl, staleWhileRevalidate, staleIfError, Duration.ZERO);
+    }
+
+    public MovieCache(Duration ttl, Duration staleWhileRevalidate, Duration staleIfError, Duration negativeTtl) {
+        this.ttlNanos = ttl.toNanos();
+        this.staleWhileRevalidateNanos = staleWhileRevalidate.toNanos();
+        this.staleIfErrorNanos = staleIfError.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+    }
+
+    public Entry<MovieValue> movieById(long movieId) {
+        Entry<MovieValue> entry = moviesById.get(movieId);
+        if (entry != null && entry.isExpired()) {
+            moviesById.remove(movieId, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    public void putMovie(long movieId, MovieValue movie) {
+        if (movie != null) {
+            moviesById.put(movieId, new Entry<>(movie));
+        }
+    }
+
+    public Entry<List<MovieValue>> moviesByName(String name) {
+        Entry<List<MovieValue>> entry = moviesByName.get(name);
+        if (entry != null && entry.isExpired()) {
+            moviesByName.remove(name, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    public void putMoviesByName(String name, List<MovieValue> movies) {
+        if (movies != null) {
+            moviesByName.put(name, new Entry<>(immutableCopyOf(movies)));
+        }
+    }
+
+    public Entry<List<MovieValue>> moviesByYear(int year) {
+        Entry<List<MovieValue>> entry = moviesByYear.get(year);
+        if (entry != null && entry.isExpired()) {
+            moviesByYear.remove(year, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    public void putMoviesByYear(int year, List<MovieValue> movies) {
+        if (movies != null) {
+            moviesByYear.put(year, new Entry<>(immutableCopyOf(movies)));
+        }
+    }
+
+    /**
+     * Returns the 404 the service gave for this id, as long as it is within the negative TTL.
+     */
+    public MovieFailure missingId(long movieId) {
+        return liveMiss(missingIds.get(movieId), miss -> missingIds.remove(movieId, miss));
+    }
+
+    public void putMissingId(long movieId, MovieFailure notFound) {
+        if (negativeTtlNanos > 0) {
+            missingIds.put(movieId, new Miss(notFound, System.nanoTime() + negativeTtlNanos));
+        }
+    }
+
+    public MovieFailure missingName(String name) {
+        return liveMiss(missingNames.get(name), miss -> missingNames.remove(name, miss));
+    }
+
+    public void putMissingName(String name, MovieFailure notFound) {
+        if (negativeTtlNanos > 0) {
+            missingNames.put(name, new Miss(notFound, System.nanoTime() + negativeTtlNanos));
+        }
+    }
+
+    public MovieFailure missingYear(int year) {
+        return liveMiss(missingYears.get(year), miss -> missingYears.remove(year, miss));
+    }
+
+    public void putMissingYear(int year, MovieFailure notFound) {
+        if (negativeTtlNanos > 0) {
+            missingYears.put(year, new Miss(notFound, System.nanoTime() + negativeTtlNanos));
+        }
+    }
+
+    /**
+     * Forgets the misses a newly added movie may answer. Name lookups match on parts of the name, so
+     * every remembered name miss is dropped.
+     */
+    public void movieAdded(Long movieId, Integer year) {
+        if (movieId != null) {
+            missingIds.remove(movieId);
+        }
+        if (year != null) {
+            missingYears.remove(year);
+        }
+        missingNames.clear();
+    }
+
+    /**
+     * {@link #movieAdded(Long, Integer)} for a movie another instance added. Its year is not known
+     * here, so every remembered year miss is dropped too.
+     */
+    public void movieAddedElsewhere(long movieId) {
+        missingIds.remove(movieId);
+        missingYears.clear();
+        missingNames.clear();
+    }
+
+    /**
+     * Drops everything cached about the movie: its own entry and every name and year lookup whose
+     * answer lists it.
+     */
+    public void invalidate(long movieId) {
+        moviesById.remove(movieId);
+        missingIds.remove(movieId);
+        moviesByName.values().removeIf(entry -> lists(entry.value, movieId));
+        moviesByYear.forEach((entry, year) -> {
+            if (lists(entry.value, movieId)) {
+                moviesByYear.remove(year, entry);
+            }
+        });
+    }
+
+    /**
+     * Invalidates the movie, and drops the lookups its new name and year answer as well, since it
+     * may only have moved into them with this write.
+     */
+    public void movieWritten(long movieId, String name, Integer year) {
+        invalidate(movieId);
+        if (year != null) {
+            moviesByYear.remove(year);
+            missingYears.remove(year);
+        }
+        if (name != null) {
+            moviesByName.keySet().removeIf(name::contains);
+            missingNames.keySet().removeIf(name::contains);
+        }
+    }
+
+    public void invalidateAll() {
+        moviesById.clear();
+        moviesByName.clear();
+        moviesByYear.clear();
+        missingIds.clear();
+        missingNames.clear();
+        missingYears.clear();
+    }
+
+    public int size() {
+        return moviesById.size() + moviesByName.size() + moviesByYear.size();
+    }
+
+    public void recordStaleServe() {
+        staleServes.increment();
+    }
+
+    public void recordStaleIfErrorServe() {
+        staleIfErrorServes.increment();
+    }
+
+    public long getStaleServeCount() {
+        return staleServes.sum();
+    }
+
+    public long getStaleIfErrorServeCount() {
+        return staleIfErrorServes.sum();
+    }
+
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    private MovieFailure liveMiss(Miss miss, Consumer<Miss> evict) {
+        if (miss == null) {
+            return null;
+        }
+        if (miss.expiresAt - System.nanoTime() <= 0) {
+            evict.accept(miss);
+            return null;
+        }
+        negativeHits.increment();
+        return miss.notFound;
+    }
+
+    private static boolean lists(List<MovieValue> movies, long movieId) {
+        for (MovieValue movie : movies) {
+            if (movie.getMovieId() != null && movie.getMovieId() == movieId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<MovieValue> immutableCopyOf(List<MovieValue> movies) {
+        return Collections.unmodifiableList(new ArrayList<>(movies));
+    }
+
+    // the stackless failure has suppression disabled, so one instance can be rethrown to every caller
+    private static final class Miss {
+        private final MovieFailure notFound;
+        private final long expiresAt;
+
+        private Miss(MovieFailure notFound, long expiresAt) {
+            this.notFound = notFound;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public final class Entry<T> {
+        private final T value;
+        private final long storedAt = System.nanoTime();
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        private Entry(T value) {
+            this.value = value;
+        }
+
+        public T value() {
+            return value;
+        }
+
+        public boolean isFresh() {
+            return age() <= ttlNanos;
+        }
+
+        public boolean isStale() {
+            long age = age();
+            return age > ttlNanos && age <= ttlNanos + staleWhileRevalidateNanos;
+        }
+
+        public boolean isUsableOnError() {
+            return age() <= ttlNanos + staleIfErrorNanos;
+        }
+
+        /**
+         * Only the first caller to see a stale entry refreshes it; the others keep serving it.
+         */
+        public boolean tryStartRevalidation() {
+            if (revalidating.compareAndSet(false, true)) {
+                revalidations.increment();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Lets the next stale read start another refresh. A successful refresh replaces the entry,
+         * so this only matters when it failed, came back empty or was cancelled.
+         */
+        public void revalidationEnded() {
+            revalidating.set(false);
+        }
+
+        private boolean isExpired() {
+            return age() > ttlNanos + Math.max(staleWhileRevalidateNanos, staleIfErrorNanos);
+        }
+
+        private long age() {
+            return System.nanoTime() - storedAt;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.learnwiremock.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link InvalidationBus} over UDP. The first id published opens a batch window, and every id
+ * published before it closes goes out with it in a single datagram per target and kind of change. Targets are either
+ * a multicast group every instance joined or a list of unicast peers, which also works on the
+ * loopback interface. Datagrams are fire and forget, and ids published after {@link #close()} are
+ * dropped.
+ */
+@Slf4j
+public class UdpInvalidationBus implements InvalidationBus {
+
+    private static final int MAGIC = 0x4D564956;
+    private static final byte INVALIDATED = 0;
+    private static final byte ADDED = 1;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Byte.BYTES + Short.BYTES;
+    // stays below a typical 1500 byte MTU, so a batch is never fragmented
+    private static final int MAX_DATAGRAM_BYTES = 1400;
+    static final int MAX_IDS_PER_DATAGRAM = (MAX_DATAGRAM_BYTES - HEADER_BYTES) / Long.BYTES;
+
+    private final DatagramChannel channel;
+    private final List<SocketAddress> targets = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> listeners = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> addedListeners = new CopyOnWriteArrayList<>();
+    // ids waiting for the window to close, guarded by this
+    private final IdBuffer pendingInvalidated = new IdBuffer();
+    private final IdBuffer pendingAdded = new IdBuffer();
+    private final long senderId = ThreadLocalRandom.current().nextLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final long batchWindowNanos;
+    private final ScheduledExecutorService flusher;
+    private final Thread receiver;
+    private volatile boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sentDatagrams = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    private UdpInvalidationBus(DatagramChannel channel, Duration batchWindow) {
+        this.channel = channel;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-bus-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchWindowNanos = batchWindow.toNanos();
+        this.receiver = new Thread(this::receive, "invalidation-bus-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Joins the multicast group on the given interface. Every instance joining the same group and
+     * port hears every other one.
+     */
+    public static UdpInvalidationBus multicast(InetAddress group, int port, NetworkInterface networkInterface,
+                                               Duration batchWindow) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            // instances sharing a host hear each other through the loopback copy, our own is skipped by sender id
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            channel.join(group, networkInterface);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        UdpInvalidationBus bus = new UdpInvalidationBus(channel, batchWindow);
+        bus.addPeer(new InetSocketAddress(group, port));
+        return bus;
+    }
+
+    /**
+     * Binds to the given address and sends to the peers added with {@link #addPeer(SocketAddress)}.
+     * Port 0 picks a free port, see {@link #getLocalAddress()}.
+     */
+    public static UdpInvalidationBus unicast(InetSocketAddress bindAddress, Duration batchWindow) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.bind(bindAddress);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return new UdpInvalidationBus(channel, batchWindow);
+    }
+
+    public void addPeer(SocketAddress peer) {
+        targets.add(peer);
+    }
+
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void publish(long movieId) {
+        publish(movieId, pendingInvalidated);
+    }
+
+    @Override
+    public void publishAdded(long movieId) {
+        publish(movieId, pendingAdded);
+    }
+
+    private void publish(long movieId, IdBuffer pending) {
+        if (closed) {
+            return;
+        }
+        published.increment();
+        int size;
+        synchronized (this) {
+            size = pending.add(movieId);
+        }
+        try {
+            if (size >= MAX_IDS_PER_DATAGRAM) {
+                flusher.execute(this::flushQuietly);
+            } else if (flushScheduled.compareAndSet(false, true)) {
+                flusher.schedule(this::flushQuietly, batchWindowNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (RejectedExecutionException ex) {
+            // closed meanwhile, publishing is called from the finally of a write and must not throw
+            log.debug("Invalidation of movie {} dropped, the bus is closed", movieId);
+        }
+    }
+
+    @Override
+    public void subscribe(LongConsumer listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void subscribeAdded(LongConsumer listener) {
+        addedListeners.add(listener);
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getSentDatagramCount() {
+        return sentDatagrams.sum();
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        channel.close();
+    }
+
+    // only ever runs on the flusher thread, or after it stopped
+    private void flushQuietly() {
+        // ids published from here on open the next window
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (IOException ex) {
+            log.warn("Sending invalidations failed and the message is {} ", ex.getMessage());
+        }
+    }
+
+    private void flush() throws IOException {
+        long[] invalidated;
+        long[] added;
+        synchronized (this) {
+            invalidated = pendingInvalidated.drain();
+            added = pendingAdded.drain();
+        }
+        ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+        send(datagram, INVALIDATED, invalidated);
+        send(datagram, ADDED, added);
+    }
+
+    private void send(ByteBuffer datagram, byte kind, long[] ids) throws IOException {
+        for (int from = 0; from < ids.length; from += MAX_IDS_PER_DATAGRAM) {
+            int count = Math.min(MAX_IDS_PER_DATAGRAM, ids.length - from);
+            datagram.clear();
+            datagram.putInt(MAGIC).putLong(senderId).put(kind).putShort((short) count);
+            for (int i = from; i < from + count; i++) {
+                datagram.putLong(ids[i]);
+            }
+            datagram.flip();
+            for (SocketAddress target : targets) {
+                channel.send(datagram.duplicate(), target);
+            }
+            sentDatagrams.increment();
+        }
+    }
+
+    private void receive() {
+        ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+        while (channel.isOpen()) {
+            try {
+                datagram.clear();
+                channel.receive(datagram);
+                datagram.flip();
+                if (datagram.remaining() < HEADER_BYTES || datagram.getInt() != MAGIC || datagram.getLong() == senderId) {
+                    continue;
+                }
+                List<LongConsumer> kindListeners = datagram.get() == ADDED ? addedListeners : listeners;
+                int count = Math.min(datagram.getShort() & 0xFFFF, datagram.remaining() / Long.BYTES);
+                for (int i = 0; i < count; i++) {
+                    long movieId = datagram.getLong();
+                    received.increment();
+                    for (LongConsumer listener : kindListeners) {
+                        listener.accept(movieId);
+                    }
+                }
+            } catch (ClosedChannelException ex) {
+                return;
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Receiving invalidations failed and the message is {} ", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Growable array of primitive ids, so publishing boxes nothing. Not thread safe.
+     */
+    private static final class IdBuffer {
+        private long[] ids = new long[16];
+        private int size;
+
+        int add(long movieId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = movieId;
+            return size;
+        }
+
+        // the ids added since the last drain, sorted and without repeats
+        long[] drain() {
+            long[] drained = Arrays.copyOf(ids, size);
+            size = 0;
+            Arrays.sort(drained);
+            int unique = 0;
+            for (int i = 0; i < drained.length; i++) {
+                if (i == 0 || drained[i] != drained[i - 1]) {
+                    drained[unique++] = drained[i];
+                }
+            }
+            return unique == drained.length ? drained : Arrays.copyOf(drained, unique);
+        }
+    }
+}
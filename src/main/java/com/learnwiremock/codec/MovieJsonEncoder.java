@@ -0,0 +1,169 @@
+package com.learnwiremock.codec;
+
+import com.learnwiremock.dto.Movie;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link Movie} as UTF-8 JSON straight into bytes, producing exactly what the default
+ * Jackson encoder sends, nulls and the {@code [year,month,day]} date form included. The JSON is
+ * built in a scratch buffer kept per thread, so encoding allocates only the returned array.
+ */
+public final class MovieJsonEncoder {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final int INITIAL_CAPACITY = 256;
+    // a thread that once encoded a huge movie does not keep that much memory around
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[INITIAL_CAPACITY]);
+
+    private byte[] buffer;
+    private int size;
+
+    private MovieJsonEncoder(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    public static byte[] encode(Movie movie) {
+        MovieJsonEncoder encoder = new MovieJsonEncoder(SCRATCH.get());
+        encoder.writeMovie(movie);
+        if (encoder.buffer.length > MAX_RETAINED_CAPACITY) {
+            SCRATCH.remove();
+        } else {
+            SCRATCH.set(encoder.buffer);
+        }
+        return Arrays.copyOf(encoder.buffer, encoder.size);
+    }
+
+    private void writeMovie(Movie movie) {
+        writeAscii("{\"movie_id\":");
+        writeNumber(movie.getMovie_id());
+        writeAscii(",\"name\":");
+        writeString(movie.getName());
+        writeAscii(",\"cast\":");
+        writeString(movie.getCast());
+        writeAscii(",\"year\":");
+        writeNumber(movie.getYear());
+        writeAscii(",\"release_date\":");
+        writeDate(movie.getRelease_date());
+        writeByte('}');
+    }
+
+    private void writeNumber(Number number) {
+        if (number == null) {
+            writeBytes(NULL);
+        } else {
+            writeAscii(number.toString());
+        }
+    }
+
+    private void writeDate(LocalDate date) {
+        if (date == null) {
+            writeBytes(NULL);
+            return;
+        }
+        writeByte('[');
+        writeAscii(Integer.toString(date.getYear()));
+        writeByte(',');
+        writeAscii(Integer.toString(date.getMonthValue()));
+        writeByte(',');
+        writeAscii(Integer.toString(date.getDayOfMonth()));
+        writeByte(']');
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeBytes(NULL);
+            return;
+        }
+        // worst case is six bytes per char, for a unicode escape
+        ensureCapacity(value.length() * 6 + 2);
+        byte[] out = buffer;
+        int at = size;
+        out[at++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                out[at++] = (byte) c;
+            } else if (c < 0x80) {
+                at = writeEscape(out, at, c);
+            } else if (c < 0x800) {
+                out[at++] = (byte) (0xC0 | (c >> 6));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Jackson escapes each half of a surrogate pair instead of writing the code point
+                out[at++] = '\\';
+                out[at++] = 'u';
+                out[at++] = HEX[c >> 12];
+                out[at++] = HEX[(c >> 8) & 0xF];
+                out[at++] = HEX[(c >> 4) & 0xF];
+                out[at++] = HEX[c & 0xF];
+            } else {
+                out[at++] = (byte) (0xE0 | (c >> 12));
+                out[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out[at++] = '"';
+        size = at;
+    }
+
+    private static int writeEscape(byte[] out, int at, char c) {
+        out[at++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                out[at++] = (byte) c;
+                return at;
+            case '\n':
+                out[at++] = 'n';
+                return at;
+            case '\r':
+                out[at++] = 'r';
+                return at;
+            case '\t':
+                out[at++] = 't';
+                return at;
+            case '\b':
+                out[at++] = 'b';
+                return at;
+            case '\f':
+                out[at++] = 'f';
+                return at;
+            default:
+                out[at++] = 'u';
+                out[at++] = '0';
+                out[at++] = '0';
+                out[at++] = HEX[c >> 4];
+                out[at++] = HEX[c & 0xF];
+                return at;
+        }
+    }
+
+    private void writeAscii(String ascii) {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[size++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void ensureCapacity(int more) {
+        if (size + more > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + more));
+        }
+    }
+}
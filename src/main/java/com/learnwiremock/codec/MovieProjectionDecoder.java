@@ -0,0 +1,98 @@
+package com.learnwiremock.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.learnwiremock.dto.MovieField;
+import com.learnwiremock.dto.MovieView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decodes a JSON array of movies into {@link MovieView}s straight from the parser's tokens. Values
+ * of fields that were not asked for are skipped without being decoded, so the decoder does little
+ * work even when the service ignores the {@code fields} parameter and sends whole movies.
+ */
+public final class MovieProjectionDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private MovieProjectionDecoder() {
+    }
+
+    public static List<MovieView> decodeList(byte[] json, Set<MovieField> fields) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return decodeList(parser, fields);
+        }
+    }
+
+    public static List<MovieView> decodeList(InputStream json, Set<MovieField> fields) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return decodeList(parser, fields);
+        }
+    }
+
+    private static List<MovieView> decodeList(JsonParser parser, Set<MovieField> fields) throws IOException {
+        Set<MovieField> requested = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected a JSON array of movies");
+        }
+        List<MovieView> views = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            views.add(decodeMovie(parser, requested));
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected a movie object but got " + token);
+        }
+        return views;
+    }
+
+    private static MovieView decodeMovie(JsonParser parser, Set<MovieField> fields) throws IOException {
+        Long movieId = null;
+        String name = null;
+        String cast = null;
+        Integer year = null;
+        LocalDate releaseDate = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            MovieField field = MovieField.forJsonName(parser.getCurrentName());
+            JsonToken value = parser.nextToken();
+            if (field == null || !fields.contains(field)) {
+                // a scalar is skipped just by moving past its token, without decoding its text
+                parser.skipChildren();
+                continue;
+            }
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case MOVIE_ID:
+                    movieId = parser.getValueAsLong();
+                    break;
+                case NAME:
+                    name = parser.getText();
+                    break;
+                case CAST:
+                    cast = parser.getText();
+                    break;
+                case YEAR:
+                    year = parser.getValueAsInt();
+                    break;
+                case RELEASE_DATE:
+                    releaseDate = LocalDate.parse(parser.getText());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new MovieView(fields, movieId, name, cast, year, releaseDate);
+    }
+}
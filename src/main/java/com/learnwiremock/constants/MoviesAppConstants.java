@@ -3,6 +3,8 @@ package com.learnwiremock.constants;
 public class MoviesAppConstants {
     public static final String GET_ALL_MOVIES_V1 = "/movieservice/v1/allMovies";
     public static final String MOVIE_BY_ID_PATH_PARAM_V1 = "/movieservice/v1/movie/{id}";
+    // the path of a movie by id up to the id, for matching request paths
+    public static final String MOVIE_BY_ID_V1 = "/movieservice/v1/movie/";
 
     public static final String MOVIE_BY_NAME_QUERY_PARAM_V1 = "/movieservice/v1/movieName";
 
@@ -0,0 +1,42 @@
+package com.learnwiremock.dto;
+
+/**
+ * Movie attributes that can be asked for with the {@code fields} query parameter.
+ */
+public enum MovieField {
+    MOVIE_ID("movie_id"),
+    NAME("name"),
+    CAST("cast"),
+    YEAR("year"),
+    RELEASE_DATE("release_date");
+
+    private final String jsonName;
+
+    MovieField(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * The field with this JSON name, or null for a name that is not a movie attribute.
+     */
+    public static MovieField forJsonName(String jsonName) {
+        switch (jsonName) {
+            case "movie_id":
+                return MOVIE_ID;
+            case "name":
+                return NAME;
+            case "cast":
+                return CAST;
+            case "year":
+                return YEAR;
+            case "release_date":
+                return RELEASE_DATE;
+            default:
+                return null;
+        }
+    }
+}
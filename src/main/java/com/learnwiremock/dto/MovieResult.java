@@ -0,0 +1,53 @@
+package com.learnwiremock.dto;
+
+import com.learnwiremock.exception.MovieFailure;
+
+import java.util.function.Function;
+
+/**
+ * Outcome of a client call that reports failures as a value instead of throwing them.
+ */
+public final class MovieResult<T> {
+
+    private final T value;
+    private final MovieFailure failure;
+
+    private MovieResult(T value, MovieFailure failure) {
+        this.value = value;
+        this.failure = failure;
+    }
+
+    public static <T> MovieResult<T> success(T value) {
+        return new MovieResult<>(value, null);
+    }
+
+    public static <T> MovieResult<T> failure(MovieFailure failure) {
+        return new MovieResult<>(null, failure);
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * The value of a successful call; throws the failure otherwise.
+     */
+    public T getValue() {
+        if (failure != null) {
+            throw failure;
+        }
+        return value;
+    }
+
+    public MovieFailure getFailure() {
+        return failure;
+    }
+
+    public T orElse(T other) {
+        return failure == null ? value : other;
+    }
+
+    public <R> MovieResult<R> map(Function<? super T, ? extends R> mapper) {
+        return failure == null ? success(mapper.apply(value)) : failure(failure);
+    }
+}
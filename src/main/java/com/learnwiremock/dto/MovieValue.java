@@ -0,0 +1,81 @@
+package com.learnwiremock.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Immutable counterpart of {@link Movie}. It can be shared between threads and kept in caches and
+ * indexes without copying, and its hash is computed once when it is built.
+ */
+@Getter
+public final class MovieValue {
+
+    @JsonProperty("movie_id")
+    private final Long movieId;
+    private final String name;
+    private final String cast;
+    private final Integer year;
+    @JsonProperty("release_date")
+    private final LocalDate releaseDate;
+
+    @Getter(AccessLevel.NONE)
+    private final int hash;
+
+    @JsonCreator
+    @Builder(toBuilder = true)
+    public MovieValue(@JsonProperty("movie_id") Long movieId,
+                      @JsonProperty("name") String name,
+                      @JsonProperty("cast") String cast,
+                      @JsonProperty("year") Integer year,
+                      @JsonProperty("release_date") LocalDate releaseDate) {
+        this.movieId = movieId;
+        this.name = name;
+        this.cast = cast;
+        this.year = year;
+        this.releaseDate = releaseDate;
+        this.hash = Objects.hash(movieId, name, cast, year, releaseDate);
+    }
+
+    public static MovieValue from(Movie movie) {
+        return new MovieValue(movie.getMovie_id(), movie.getName(), movie.getCast(), movie.getYear(), movie.getRelease_date());
+    }
+
+    public Movie toMovie() {
+        return new Movie(movieId, name, cast, year, releaseDate);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MovieValue)) {
+            return false;
+        }
+        MovieValue that = (MovieValue) o;
+        // differing hashes settle most comparisons without looking at the cast string
+        return hash == that.hash &&
+                Objects.equals(movieId, that.movieId) &&
+                Objects.equals(name, that.name) &&
+                Objects.equals(year, that.year) &&
+                Objects.equals(releaseDate, that.releaseDate) &&
+                Objects.equals(cast, that.cast);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "MovieValue(movieId=" + movieId + ", name=" + name + ", cast=" + cast + ", year=" + year +
+                ", releaseDate=" + releaseDate + ")";
+    }
+}
@@ -0,0 +1,40 @@
+package com.learnwiremock.dto;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Read-only movie holding only the fields a projected lookup asked for; the others are null. All
+ * views decoded from one response share the same field set.
+ */
+@Getter
+public final class MovieView {
+
+    private final Set<MovieField> fields;
+    private final Long movieId;
+    private final String name;
+    private final String cast;
+    private final Integer year;
+    private final LocalDate releaseDate;
+
+    public MovieView(Set<MovieField> fields, Long movieId, String name, String cast, Integer year, LocalDate releaseDate) {
+        this.fields = fields;
+        this.movieId = movieId;
+        this.name = name;
+        this.cast = cast;
+        this.year = year;
+        this.releaseDate = releaseDate;
+    }
+
+    public boolean has(MovieField field) {
+        return fields.contains(field);
+    }
+
+    @Override
+    public String toString() {
+        return "MovieView(movieId=" + movieId + ", name=" + name + ", cast=" + cast + ", year=" + year +
+                ", releaseDate=" + releaseDate + ")";
+    }
+}
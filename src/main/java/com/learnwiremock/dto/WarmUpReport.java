@@ -0,0 +1,20 @@
+package com.learnwiremock.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class WarmUpReport {
+
+    private final Duration elapsed;
+    // warm-up exchanges that got any answer, each one left a connection in the pool
+    private final int connectionsOpened;
+    private final int syntheticRequests;
+    private final int syntheticFailures;
+
+}
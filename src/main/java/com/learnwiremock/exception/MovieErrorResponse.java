@@ -7,7 +7,15 @@ public class MovieErrorResponse extends RuntimeException{
         super(statusText, ex);
     }
 
+    public MovieErrorResponse(String message) {
+        super(message);
+    }
+
     public MovieErrorResponse(Exception ex) {
         super(ex);
     }
+
+    protected MovieErrorResponse(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
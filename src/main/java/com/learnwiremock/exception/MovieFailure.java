@@ -0,0 +1,52 @@
+package com.learnwiremock.exception;
+
+/**
+ * Stackless {@link MovieErrorResponse} carrying what the service answered. It is cheap enough to create
+ * for every failed call during an outage, and is what the {@code try...} methods of the client report.
+ */
+public class MovieFailure extends MovieErrorResponse {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        NOT_FOUND,
+        CLIENT_ERROR,
+        SERVER_ERROR,
+        // turned down on our side by a limiter or an expired deadline, the service never saw it
+        REJECTED,
+        TRANSPORT
+    }
+
+    private final Kind kind;
+    private final int statusCode;
+    private final String responseBody;
+
+    public MovieFailure(int statusCode, String statusText, String responseBody) {
+        super(statusText, false);
+        this.kind = statusCode == 404 ? Kind.NOT_FOUND : statusCode < 500 ? Kind.CLIENT_ERROR : Kind.SERVER_ERROR;
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+    }
+
+    public MovieFailure(Kind kind, String message) {
+        super(message, false);
+        this.kind = kind;
+        this.statusCode = 0;
+        this.responseBody = null;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * HTTP status of the response, or 0 when there was none.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+}
@@ -0,0 +1,237 @@
+package com.learnwiremock.index;
+
+import com.learnwiremock.cache.LongConcurrentHashMap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from normalized actor names to the ids of the movies they are cast in, fed from the
+ * comma separated {@code cast} field of fetched movies. Posting lists are sorted int arrays replaced
+ * on write, so queries run without locks and AND/OR are plain merges of sorted arrays.
+ */
+public class ActorIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final String[] NO_ACTORS = new String[0];
+
+    // past this size ratio, probing the larger list by binary search beats walking it
+    private static final int GALLOP_RATIO = 8;
+
+    private final ConcurrentHashMap<String, int[]> postings = new ConcurrentHashMap<>();
+    private final LongConcurrentHashMap<String[]> actorsByMovie = new LongConcurrentHashMap<>(1024);
+
+    /**
+     * Indexes the movie under every actor in its cast, replacing what was indexed for it before.
+     * Ids outside the int range are ignored.
+     */
+    public void add(Long movieId, String cast) {
+        if (movieId == null || movieId < 0 || movieId > Integer.MAX_VALUE) {
+            return;
+        }
+        String[] actors = actorsOf(cast);
+        // the same movies are fetched over and over, most adds change nothing
+        if (Arrays.equals(actorsByMovie.get(movieId), actors)) {
+            return;
+        }
+        int id = (int) (long) movieId;
+        synchronized (this) {
+            String[] previous = actorsByMovie.put(movieId, actors);
+            if (previous != null) {
+                for (String actor : previous) {
+                    if (Arrays.binarySearch(actors, actor) < 0) {
+                        removePosting(actor, id);
+                    }
+                }
+            }
+            for (String actor : actors) {
+                int[] ids = postings.getOrDefault(actor, EMPTY);
+                int at = Arrays.binarySearch(ids, id);
+                if (at < 0) {
+                    int insertAt = -at - 1;
+                    int[] updated = new int[ids.length + 1];
+                    System.arraycopy(ids, 0, updated, 0, insertAt);
+                    updated[insertAt] = id;
+                    System.arraycopy(ids, insertAt, updated, insertAt + 1, ids.length - insertAt);
+                    postings.put(actor, updated);
+                }
+            }
+        }
+    }
+
+    public void remove(long movieId) {
+        if (movieId < 0 || movieId > Integer.MAX_VALUE) {
+            return;
+        }
+        synchronized (this) {
+            String[] previous = actorsByMovie.remove(movieId);
+            if (previous != null) {
+                for (String actor : previous) {
+                    removePosting(actor, (int) movieId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ids of the movies every one of the actors is cast in, in ascending order.
+     */
+    public int[] allOf(String... actors) {
+        if (actors.length == 0) {
+            return EMPTY;
+        }
+        int[][] lists = new int[actors.length][];
+        for (int i = 0; i < actors.length; i++) {
+            lists[i] = postingsOf(actors[i]);
+            if (lists[i].length == 0) {
+                return EMPTY;
+            }
+        }
+        // intersecting from the rarest actor keeps every intermediate result small
+        Arrays.sort(lists, Comparator.comparingInt(ids -> ids.length));
+        int[] result = lists.length == 1 ? lists[0].clone() : lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Ids of the movies any of the actors is cast in, in ascending order.
+     */
+    public int[] anyOf(String... actors) {
+        int[] result = EMPTY;
+        for (String actor : actors) {
+            result = union(result, postingsOf(actor));
+        }
+        return result;
+    }
+
+    public int actorCount() {
+        return postings.size();
+    }
+
+    public int movieCount() {
+        return actorsByMovie.size();
+    }
+
+    public static String normalize(String actor) {
+        StringBuilder normalized = new StringBuilder(actor.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < actor.length(); i++) {
+            char c = actor.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private int[] postingsOf(String actor) {
+        return postings.getOrDefault(normalize(actor), EMPTY);
+    }
+
+    private void removePosting(String actor, int id) {
+        int[] ids = postings.get(actor);
+        int at = ids == null ? -1 : Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            postings.remove(actor);
+            return;
+        }
+        int[] updated = new int[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, at);
+        System.arraycopy(ids, at + 1, updated, at, ids.length - at - 1);
+        postings.put(actor, updated);
+    }
+
+    // sorted and deduplicated, so two casts can be compared with Arrays.equals
+    private static String[] actorsOf(String cast) {
+        if (cast == null) {
+            return NO_ACTORS;
+        }
+        TreeSet<String> actors = new TreeSet<>();
+        for (String actor : cast.split(",")) {
+            String normalized = normalize(actor);
+            if (!normalized.isEmpty()) {
+                actors.add(normalized);
+            }
+        }
+        return actors.toArray(NO_ACTORS);
+    }
+
+    static int[] intersect(int[] smaller, int[] larger) {
+        int[] result = new int[smaller.length];
+        int size = 0;
+        if (larger.length / GALLOP_RATIO >= smaller.length) {
+            int from = 0;
+            for (int id : smaller) {
+                int at = Arrays.binarySearch(larger, from, larger.length, id);
+                if (at >= 0) {
+                    result[size++] = id;
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < smaller.length && j < larger.length) {
+                if (smaller[i] < larger[j]) {
+                    i++;
+                } else if (smaller[i] > larger[j]) {
+                    j++;
+                } else {
+                    result[size++] = smaller[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            // posting lists are shared with readers, callers get their own copy
+            return b.clone();
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                result[size++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        while (i < a.length) {
+            result[size++] = a[i++];
+        }
+        while (j < b.length) {
+            result[size++] = b[j++];
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+}
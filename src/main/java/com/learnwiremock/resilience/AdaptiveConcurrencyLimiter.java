@@ -0,0 +1,279 @@
+package com.learnwiremock.resilience;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AIMD limit on in-flight requests for one endpoint. The limit grows by one per window of successful
+ * samples while the limit is being used, and shrinks multiplicatively when a request is dropped
+ * (5xx, timeout) or its round trip exceeds {@code rttTolerance} times the best recent round trip,
+ * which includes requests cancelled only after that long.
+ * Callers over the limit wait up to {@code maxQueueWait} in a queue that never blocks a thread, so
+ * it is safe to acquire from the event loop that has to finish the exchanges releasing the permits.
+ * Interactive waiters are granted before bulk ones.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int MIN_RTT_RESET_SAMPLES = 500;
+
+    private enum Outcome {
+        SUCCESS,
+        DROPPED,
+        // the request was cancelled, its round trip is only known to be at least this long
+        CANCELLED,
+        IGNORED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final long maxQueueWaitNanos;
+
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samplesSinceMinRttReset;
+    private final ArrayDeque<Waiter> interactiveWaiters = new ArrayDeque<>();
+    private final ArrayDeque<Waiter> bulkWaiters = new ArrayDeque<>();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter() {
+        this(20, 1, 200, Duration.ZERO);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration maxQueueWait) {
+        this(initialLimit, minLimit, maxLimit, 0.9, 2.0, maxQueueWait);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                      double rttTolerance, Duration maxQueueWait) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Expected 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.rttTolerance = rttTolerance;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+    }
+
+    /**
+     * Returns a permit, or null straight away when the limit is reached.
+     */
+    public Permit tryAcquire() {
+        synchronized (this) {
+            if (inFlight >= (int) limit || !interactiveWaiters.isEmpty() || !bulkWaiters.isEmpty()) {
+                rejected.increment();
+                return null;
+            }
+            inFlight++;
+        }
+        return new Permit(System.nanoTime());
+    }
+
+    public Mono<Permit> acquire() {
+        return acquire(Priority.INTERACTIVE);
+    }
+
+    /**
+     * Emits a permit once one is free, or completes empty when none frees up within the queue wait.
+     * Waiters of the same priority are served in arrival order, bulk ones only when no interactive
+     * caller is waiting. Cancelling gives up the place in the queue.
+     */
+    public Mono<Permit> acquire(Priority priority) {
+        boolean bulk = priority == Priority.BULK;
+        return Mono.create(sink -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (inFlight < (int) limit && interactiveWaiters.isEmpty() && (!bulk || bulkWaiters.isEmpty())) {
+                    inFlight++;
+                    waiter = null;
+                } else if (maxQueueWaitNanos == 0) {
+                    rejected.increment();
+                    sink.success();
+                    return;
+                } else {
+                    waiter = new Waiter(sink, bulk ? bulkWaiters : interactiveWaiters);
+                    waiter.queue.add(waiter);
+                }
+            }
+            if (waiter == null) {
+                sink.success(new Permit(System.nanoTime()));
+                return;
+            }
+            sink.onCancel(waiter::cancel);
+            waiter.timeout = Schedulers.parallel().schedule(waiter::expire, maxQueueWaitNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private void release(long rttNanos, Outcome outcome) {
+        List<Waiter> granted;
+        synchronized (this) {
+            adapt(rttNanos, outcome);
+            inFlight--;
+            granted = grantWaiters();
+        }
+        // sinks are completed outside the lock, their subscribers may start the next exchange inline
+        for (Waiter waiter : granted) {
+            waiter.granted();
+        }
+    }
+
+    private List<Waiter> grantWaiters() {
+        List<Waiter> granted = new ArrayList<>(0);
+        while (inFlight < (int) limit && (!interactiveWaiters.isEmpty() || !bulkWaiters.isEmpty())) {
+            Waiter waiter = !interactiveWaiters.isEmpty() ? interactiveWaiters.poll() : bulkWaiters.poll();
+            if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                inFlight++;
+                waiter.permit = new Permit(System.nanoTime());
+                granted.add(waiter);
+            }
+        }
+        return granted;
+    }
+
+    private void adapt(long rttNanos, Outcome outcome) {
+        int wasInFlight = inFlight;
+        if (outcome == Outcome.IGNORED) {
+            return;
+        }
+        if (outcome == Outcome.CANCELLED) {
+            // callers giving up on a slowing service are the overload the limit has to shrink for,
+            // an early cancel says nothing about the service
+            if (minRttNanos != Long.MAX_VALUE && rttNanos > rttTolerance * minRttNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            }
+            return;
+        }
+        if (++samplesSinceMinRttReset >= MIN_RTT_RESET_SAMPLES) {
+            // let the baseline follow the service if it got permanently slower
+            minRttNanos = rttNanos;
+            samplesSinceMinRttReset = 0;
+        } else if (rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+        }
+        if (outcome == Outcome.DROPPED || rttNanos > rttTolerance * minRttNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (wasInFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private final class Waiter {
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int GONE = 2;
+
+        private final MonoSink<Permit> sink;
+        private final ArrayDeque<Waiter> queue;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private Permit permit;
+        private volatile Disposable timeout;
+
+        private Waiter(MonoSink<Permit> sink, ArrayDeque<Waiter> queue) {
+            this.sink = sink;
+            this.queue = queue;
+        }
+
+        private void granted() {
+            if (timeout != null) {
+                timeout.dispose();
+            }
+            sink.success(permit);
+        }
+
+        private void expire() {
+            if (leave()) {
+                rejected.increment();
+                sink.success();
+            }
+        }
+
+        private void cancel() {
+            if (!leave()) {
+                Permit granted;
+                synchronized (AdaptiveConcurrencyLimiter.this) {
+                    granted = permit;
+                }
+                // granted while the caller was cancelling, the permit was never used
+                if (granted != null) {
+                    granted.onIgnore();
+                }
+            }
+            if (timeout != null) {
+                timeout.dispose();
+            }
+        }
+
+        private boolean leave() {
+            if (!state.compareAndSet(WAITING, GONE)) {
+                return false;
+            }
+            synchronized (AdaptiveConcurrencyLimiter.this) {
+                queue.remove(this);
+            }
+            return true;
+        }
+    }
+
+    public final class Permit {
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void onSuccess() {
+            finish(Outcome.SUCCESS);
+        }
+
+        public void onDropped() {
+            finish(Outcome.DROPPED);
+        }
+
+        /**
+         * The request was cancelled before it finished. It counts as dropped when it had already
+         * taken longer than the limiter tolerates, and is ignored otherwise.
+         */
+        public void onCancel() {
+            finish(Outcome.CANCELLED);
+        }
+
+        public void onIgnore() {
+            finish(Outcome.IGNORED);
+        }
+
+        private void finish(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                release(System.nanoTime() - startNanos, outcome);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.learnwiremock.resilience;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Point in time by which a caller needs its answer. A deadline made current with {@link #call(Supplier)}
+ * applies to every client call made on that thread inside it; nested deadlines can only shorten it.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Duration timeout;
+
+    private Deadline(long deadlineNanos, Duration timeout) {
+        this.deadlineNanos = deadlineNanos;
+        this.timeout = timeout;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), timeout);
+    }
+
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T within(Duration timeout, Supplier<T> call) {
+        return after(timeout).call(call);
+    }
+
+    /**
+     * Runs the call with exactly the given deadline current, or none when it is null, whatever the
+     * thread had. For work carried over to another thread, or detached from its caller.
+     */
+    public static <T> T callWith(Deadline deadline, Supplier<T> call) {
+        Deadline previous = CURRENT.get();
+        set(deadline);
+        try {
+            return call.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    public <T> T call(Supplier<T> call) {
+        Deadline previous = CURRENT.get();
+        return callWith(previous == null ? this : earlierOf(previous), call);
+    }
+
+    private static void set(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * The budget the deadline was set with, for reporting.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public Deadline earlierOf(Deadline other) {
+        return other.deadlineNanos - deadlineNanos < 0 ? other : this;
+    }
+}
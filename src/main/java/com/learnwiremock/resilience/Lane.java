@@ -0,0 +1,44 @@
+package com.learnwiremock.resilience;
+
+import com.learnwiremock.timing.PhaseTiming;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.io.Closeable;
+
+/**
+ * A {@link WebClient} with a connection pool and event loops of its own. Traffic sent through one
+ * lane never waits for a connection or an event loop held by another lane. The client carries the
+ * {@link PhaseTiming} hooks, so its exchanges can be broken down into phases.
+ */
+public class Lane implements Closeable {
+
+    private final String name;
+    private final ConnectionProvider connections;
+    private final LoopResources loops;
+    private final WebClient webClient;
+
+    public Lane(String name, String baseUrl, int maxConnections, int eventLoopThreads) {
+        this.name = name;
+        this.connections = ConnectionProvider.fixed(name, maxConnections);
+        this.loops = LoopResources.create(name, eventLoopThreads, true);
+        HttpClient httpClient = HttpClient.create(connections).tcpConfiguration(tcp -> tcp.runOn(loops));
+        this.webClient = PhaseTiming.webClient(baseUrl, httpClient);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public WebClient webClient() {
+        return webClient;
+    }
+
+    @Override
+    public void close() {
+        connections.dispose();
+        loops.dispose();
+    }
+}
@@ -0,0 +1,224 @@
+package com.learnwiremock.resilience;
+
+import com.learnwiremock.exception.MovieFailure;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Spreads exchanges over several movie service replicas. Each exchange goes to the less loaded of two
+ * randomly picked replicas (power of two choices on outstanding requests). A replica that fails,
+ * answers slower than {@code slowThreshold} or is given up on after that long several times in a
+ * row is ejected for a while. Replicas can be given a second, bulk, connection pool so that BULK
+ * traffic is balanced too without holding the connections interactive calls need.
+ */
+@Slf4j
+public class MoviesLoadBalancer {
+
+    private final List<Backend> backends;
+    private final long slowThresholdNanos;
+    private final int consecutiveFailuresToEject;
+    private final long ejectionNanos;
+    private final int maxEjected;
+
+    public MoviesLoadBalancer(List<String> baseUrls) {
+        this(baseUrls, WebClient::create, Duration.ofSeconds(2), 5, Duration.ofSeconds(30));
+    }
+
+    public MoviesLoadBalancer(List<String> baseUrls, Function<String, WebClient> webClientFactory,
+                              Duration slowThreshold, int consecutiveFailuresToEject, Duration ejectionTime) {
+        this(baseUrls, webClientFactory, null, slowThreshold, consecutiveFailuresToEject, ejectionTime);
+    }
+
+    /**
+     * @param bulkWebClientFactory client of each replica's bulk pool, typically a {@code Lane}'s, or null for none
+     */
+    public MoviesLoadBalancer(List<String> baseUrls, Function<String, WebClient> webClientFactory,
+                              Function<String, WebClient> bulkWebClientFactory,
+                              Duration slowThreshold, int consecutiveFailuresToEject, Duration ejectionTime) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one base url is needed");
+        }
+        List<Backend> created = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            created.add(new Backend(baseUrl, webClientFactory.apply(baseUrl),
+                    bulkWebClientFactory == null ? null : bulkWebClientFactory.apply(baseUrl)));
+        }
+        this.backends = Collections.unmodifiableList(created);
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.consecutiveFailuresToEject = consecutiveFailuresToEject;
+        this.ejectionNanos = ejectionTime.toNanos();
+        // never eject more than half of the replicas, a fleet-wide problem is not an outlier
+        this.maxEjected = backends.size() / 2;
+    }
+
+    public <T> Flux<T> exchange(Function<WebClient, Flux<T>> exchange) {
+        return exchange(exchange, false);
+    }
+
+    /**
+     * Bulk exchanges go through the chosen replica's bulk pool when it has one. They count towards its
+     * load and health like any other exchange.
+     */
+    public <T> Flux<T> exchange(Function<WebClient, Flux<T>> exchange, boolean bulk) {
+        return Flux.defer(() -> {
+            Backend backend = choose();
+            backend.outstanding.incrementAndGet();
+            backend.requests.increment();
+            long start = System.nanoTime();
+            return exchange.apply(bulk && backend.bulkWebClient != null ? backend.bulkWebClient : backend.webClient).
+                    doOnComplete(() -> backend.finish(System.nanoTime() - start, false)).
+                    doOnError(ex -> backend.finish(System.nanoTime() - start, isFailure(ex))).
+                    doOnCancel(() -> backend.cancel(System.nanoTime() - start));
+        });
+    }
+
+    public List<Backend> getBackends() {
+        return backends;
+    }
+
+    public boolean hasBulkPools() {
+        return backends.get(0).bulkWebClient != null;
+    }
+
+    Backend choose() {
+        long now = System.nanoTime();
+        List<Backend> healthy = new ArrayList<>(backends.size());
+        for (Backend backend : backends) {
+            if (!backend.isEjected(now)) {
+                healthy.add(backend);
+            }
+        }
+        List<Backend> candidates = healthy.isEmpty() ? backends : healthy;
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Backend a = candidates.get(first);
+        Backend b = candidates.get(second);
+        return a.outstanding.get() <= b.outstanding.get() ? a : b;
+    }
+
+    private int ejectedCount(long now) {
+        int ejected = 0;
+        for (Backend backend : backends) {
+            if (backend.isEjected(now)) {
+                ejected++;
+            }
+        }
+        return ejected;
+    }
+
+    private static boolean isFailure(Throwable ex) {
+        if (ex instanceof WebClientResponseException) {
+            return ((WebClientResponseException) ex).getRawStatusCode() >= 500;
+        }
+        if (ex instanceof MovieFailure && ((MovieFailure) ex).getStatusCode() != 0) {
+            return ((MovieFailure) ex).getStatusCode() >= 500;
+        }
+        return true;
+    }
+
+    public final class Backend {
+        private final String baseUrl;
+        private final WebClient webClient;
+        private final WebClient bulkWebClient;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        private Backend(String baseUrl, WebClient webClient, WebClient bulkWebClient) {
+            this.baseUrl = baseUrl;
+            this.webClient = webClient;
+            this.bulkWebClient = bulkWebClient;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public WebClient getWebClient() {
+            return webClient;
+        }
+
+        /**
+         * Client of the replica's bulk pool, or null when it has none.
+         */
+        public WebClient getBulkWebClient() {
+            return bulkWebClient;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getRequestCount() {
+            return requests.sum();
+        }
+
+        public long getEjectionCount() {
+            return ejections.sum();
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now) {
+            return ejected && ejectedUntil - now > 0;
+        }
+
+        private void finish(long latencyNanos, boolean failed) {
+            outstanding.decrementAndGet();
+            if (!failed && latencyNanos <= slowThresholdNanos) {
+                consecutiveFailures.set(0);
+                return;
+            }
+            if (consecutiveFailures.incrementAndGet() >= consecutiveFailuresToEject) {
+                eject();
+            }
+        }
+
+        private void cancel(long elapsedNanos) {
+            // a caller giving up early says nothing about the replica, one that kept it waiting past
+            // the slow threshold does, or a replica that hangs would never be ejected
+            if (elapsedNanos > slowThresholdNanos) {
+                finish(elapsedNanos, true);
+            } else {
+                outstanding.decrementAndGet();
+            }
+        }
+
+        private void eject() {
+            synchronized (MoviesLoadBalancer.this) {
+                long now = System.nanoTime();
+                if (isEjected(now) || ejectedCount(now) >= maxEjected) {
+                    return;
+                }
+                ejectedUntil = now + ejectionNanos;
+                ejected = true;
+                consecutiveFailures.set(0);
+                ejections.increment();
+            }
+            log.warn("Ejecting movie service replica {} for {} ms", baseUrl, ejectionNanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.learnwiremock.resilience;
+
+import java.util.function.Supplier;
+
+/**
+ * Class of traffic a client call belongs to. A priority made current with {@link #call(Supplier)}
+ * applies to every client call made on that thread inside it, so a batch job can mark all of its
+ * work as {@link #BULK} in one place.
+ */
+public enum Priority {
+
+    INTERACTIVE,
+    BULK;
+
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The priority made current on this thread, or {@code null} when the caller did not pick one.
+     */
+    public static Priority current() {
+        return CURRENT.get();
+    }
+
+    public static Priority currentOr(Priority defaultPriority) {
+        Priority current = CURRENT.get();
+        return current != null ? current : defaultPriority;
+    }
+
+    /**
+     * Runs the call with exactly the given priority current, or none when it is null, for work
+     * carried over to another thread.
+     */
+    public static <T> T callWith(Priority priority, Supplier<T> call) {
+        Priority previous = CURRENT.get();
+        set(priority);
+        try {
+            return call.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    public <T> T call(Supplier<T> call) {
+        return callWith(this, call);
+    }
+
+    private static void set(Priority priority) {
+        if (priority == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(priority);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.learnwiremock.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket for one endpoint, kept as a single theoretical arrival time (GCRA) so acquiring a
+ * token is one CAS instead of a lock. Callers over the rate are delayed rather than failed, unless
+ * the delay would exceed {@code maxWait}.
+ */
+public class TokenBucketRateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final long maxWaitNanos;
+    private final int maxRetries;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, Duration.ofSeconds(5), 3);
+    }
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst, Duration maxWait, int maxRetries) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.emissionIntervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Takes a token and returns how long the caller has to wait before using it, or -1 when that
+     * wait would be longer than {@code maxWait}; in that case no token is taken.
+     */
+    public long reserve() {
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long wait = Math.max(0, arrival - burstToleranceNanos - now);
+            if (wait > maxWaitNanos) {
+                rejected.increment();
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, Math.max(arrival, now) + emissionIntervalNanos)) {
+                if (wait > 0) {
+                    delayed.increment();
+                }
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Hands out no tokens for {@code retryAfter}, as asked by a 429 response.
+     */
+    public void pauseFor(Duration retryAfter) {
+        throttled.increment();
+        long resumeAt = System.nanoTime() + retryAfter.toNanos() + burstToleranceNanos;
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            if (arrival >= resumeAt || theoreticalArrival.compareAndSet(arrival, resumeAt)) {
+                return;
+            }
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+}
@@ -0,0 +1,50 @@
+package com.learnwiremock.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets the first few errors per key through in each interval and counts the rest, so a failing
+ * service does not turn every call into a log write.
+ */
+final class ErrorLogSampler {
+
+    static final long SUPPRESSED = -1;
+
+    private final int errorsPerInterval;
+    private final long intervalNanos;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    ErrorLogSampler(int errorsPerInterval, long intervalNanos) {
+        this.errorsPerInterval = errorsPerInterval;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Returns {@link #SUPPRESSED} when the error should not be logged, otherwise how many errors for
+     * the key were suppressed since the last one that was.
+     */
+    long tryLog(String key) {
+        return windows.computeIfAbsent(key, k -> new Window()).tryLog(System.nanoTime());
+    }
+
+    private final class Window {
+        private long startedAt = System.nanoTime();
+        private int logged;
+        private long suppressed;
+
+        synchronized long tryLog(long now) {
+            if (now - startedAt >= intervalNanos) {
+                startedAt = now;
+                logged = 0;
+            }
+            if (logged >= errorsPerInterval) {
+                suppressed++;
+                return SUPPRESSED;
+            }
+            logged++;
+            long suppressedBefore = suppressed;
+            suppressed = 0;
+            return suppressedBefore;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.learnwiremock.service;
+
+import com.learnwiremock.cache.LongConcurrentHashMap;
+import com.learnwiremock.cache.MovieCache;
+import com.learnwiremock.dto.MovieValue;
+import com.learnwiremock.resilience.Deadline;
+import com.learnwiremock.resilience.Priority;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+/**
+ * Warms the cache for the lookups that usually follow the ones callers make: a name search is
+ * followed by lookups of the movies it found, and a year by the years next to it. The found movies
+ * are seeded into the cache from the search results, which carry the same data, so they cost no
+ * request. Neighbouring years are fetched, but only while the client has capacity to spare.
+ */
+@Slf4j
+public class MoviePrefetcher {
+
+    // beyond this many unused prefetches the tracking is reset rather than grown
+    private static final int MAX_TRACKED = 10_000;
+
+    private final MovieCache movieCache;
+    private final IntFunction<Mono<List<MovieValue>>> yearFetch;
+    private final BooleanSupplier spareCapacity;
+    private final Semaphore permits;
+    private final int maxSeededPerSearch;
+
+    // prefetched and not looked up yet
+    private final LongConcurrentHashMap<Boolean> prefetchedIds = new LongConcurrentHashMap<>(1024);
+    private final LongConcurrentHashMap<Boolean> prefetchedYears = new LongConcurrentHashMap<>();
+
+    private final LongAdder seeded = new LongAdder();
+    private final LongAdder fetched = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    MoviePrefetcher(MovieCache movieCache, IntFunction<Mono<List<MovieValue>>> yearFetch, BooleanSupplier spareCapacity,
+                    int maxInFlight, int maxSeededPerSearch) {
+        this.movieCache = movieCache;
+        this.yearFetch = yearFetch;
+        this.spareCapacity = spareCapacity;
+        this.permits = new Semaphore(maxInFlight);
+        this.maxSeededPerSearch = maxSeededPerSearch;
+    }
+
+    void afterNameSearch(List<MovieValue> found) {
+        int seededNow = 0;
+        for (MovieValue movie : found) {
+            if (seededNow == maxSeededPerSearch) {
+                break;
+            }
+            Long movieId = movie.getMovieId();
+            if (movieId == null || movieCache.movieById(movieId) != null) {
+                continue;
+            }
+            movieCache.putMovie(movieId, movie);
+            track(prefetchedIds, movieId);
+            seeded.increment();
+            seededNow++;
+        }
+    }
+
+    void afterYearLookup(int year) {
+        prefetchYear(year - 1);
+        prefetchYear(year + 1);
+    }
+
+    /**
+     * Counts a lookup by id against the prefetches, given whether the cache could answer it.
+     */
+    void idLookedUp(long movieId, boolean cached) {
+        lookedUp(prefetchedIds, movieId, cached);
+    }
+
+    void yearLookedUp(int year, boolean cached) {
+        lookedUp(prefetchedYears, year, cached);
+    }
+
+    public long getSeededCount() {
+        return seeded.sum();
+    }
+
+    public long getFetchedCount() {
+        return fetched.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Prefetched entries that had left the cache by the time they were looked up.
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Share of prefetched entries that answered a lookup later on.
+     */
+    public double getHitRate() {
+        long prefetched = seeded.sum() + fetched.sum();
+        return prefetched == 0 ? 0 : (double) hits.sum() / prefetched;
+    }
+
+    private void prefetchYear(int year) {
+        if (movieCache.moviesByYear(year) != null || movieCache.missingYear(year) != null || prefetchedYears.containsKey(year)) {
+            return;
+        }
+        // a prefetch only ever takes capacity nobody is waiting for, otherwise it is dropped
+        if (!spareCapacity.getAsBoolean() || !permits.tryAcquire()) {
+            skipped.increment();
+            return;
+        }
+        fetched.increment();
+        track(prefetchedYears, year);
+        // nobody waits for a prefetch, so it runs at bulk priority and without the caller's deadline
+        Deadline.callWith(null, () -> Priority.BULK.call(() -> yearFetch.apply(year).
+                doFinally(signal -> permits.release()).
+                subscribe(movies -> movieCache.putMoviesByYear(year, movies), ex -> {
+                    prefetchedYears.remove(year);
+                    log.debug("Prefetching year {} failed and the message is {} ", year, ex.getMessage());
+                })));
+    }
+
+    private void lookedUp(LongConcurrentHashMap<Boolean> prefetched, long key, boolean cached) {
+        if (prefetched.remove(key) == null) {
+            return;
+        }
+        if (cached) {
+            hits.increment();
+        } else {
+            expired.increment();
+        }
+    }
+
+    private static void track(LongConcurrentHashMap<Boolean> prefetched, long key) {
+        if (prefetched.size() >= MAX_TRACKED) {
+            prefetched.clear();
+        }
+        prefetched.put(key, Boolean.TRUE);
+    }
+}
@@ -1,136 +1,1195 @@
 package com.learnwiremock.service;
 
+import com.learnwiremock.cache.InvalidationBus;
+import com.learnwiremock.cache.MovieCache;
+import com.learnwiremock.codec.MovieJsonEncoder;
+import com.learnwiremock.codec.MovieProjectionDecoder;
 import com.learnwiremock.constants.MoviesAppConstants;
 import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.MovieField;
+import com.learnwiremock.dto.MovieResult;
+import com.learnwiremock.dto.MovieValue;
+import com.learnwiremock.dto.MovieView;
+import com.learnwiremock.dto.WarmUpReport;
 import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.exception.MovieFailure;
+import com.learnwiremock.index.ActorIndex;
+import com.learnwiremock.resilience.AdaptiveConcurrencyLimiter;
+import com.learnwiremock.resilience.Deadline;
+import com.learnwiremock.resilience.MoviesLoadBalancer;
+import com.learnwiremock.resilience.Priority;
+import com.learnwiremock.resilience.TokenBucketRateLimiter;
+import com.learnwiremock.timing.PhaseTiming;
+import com.learnwiremock.timing.PhaseTimingListener;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Slf4j
 public class MoviesRestClient {
 
+    private static final String WARM_UP_MOVIES = "[{\"movie_id\":1,\"name\":\"Warm Up\",\"cast\":\"Jane Doe, John Doe\"," +
+            "\"year\":2000,\"release_date\":\"2000-01-01\"}]";
+    private static final int WARM_UP_MOVIE_IDS = 10;
+    private static final Duration PAGE_RETRY_BACKOFF = Duration.ofMillis(50);
+    private static final Duration PAGE_RETRY_MAX_BACKOFF = Duration.ofSeconds(1);
+    // set by the try... methods, whose failures are values and never need a stack trace
+    private static final String STACKLESS_FAILURES = "movies.stacklessFailures";
+
     private WebClient webClient;
+    private MoviesLoadBalancer loadBalancer;
+    private MovieCache movieCache;
+
+    @Setter
+    private Supplier<AdaptiveConcurrencyLimiter> concurrencyLimiterFactory;
+    // fed with every movie that comes back from the service
+    @Setter
+    private ActorIndex actorIndex;
+    // BULK calls go through this client when set, typically a Lane's, so they never hold the connections interactive calls need.
+    // A load balancer without bulk pools is then bypassed by them, give it bulk pools to have them balanced as well
+    @Setter
+    private WebClient bulkWebClient;
+    private final ConcurrentHashMap<String, AdaptiveConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TokenBucketRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private InvalidationBus invalidationBus;
+    private UpdateCoalescer updateCoalescer;
+    private MoviePrefetcher prefetcher;
+    private PhaseTimingListener phaseTimingListener;
+    private int phaseTimingSampleOneIn;
+    private final ErrorLogSampler errorLogSampler = new ErrorLogSampler(5, TimeUnit.SECONDS.toNanos(1));
 
     public MoviesRestClient(WebClient webClient) {
         this.webClient = webClient;
     }
 
+    public MoviesRestClient(WebClient webClient, MovieCache movieCache) {
+        this.webClient = webClient;
+        this.movieCache = movieCache;
+    }
+
+    public MoviesRestClient(MoviesLoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    public MoviesRestClient(MoviesLoadBalancer loadBalancer, MovieCache movieCache) {
+        this.loadBalancer = loadBalancer;
+        this.movieCache = movieCache;
+    }
+
 
     public List<Movie> retrieveAllMovies(){
-        try {return webClient.get().uri(MoviesAppConstants.GET_ALL_MOVIES_V1).retrieve().
-                bodyToFlux(Movie.class).collectList().block();
-        } catch (WebClientResponseException ex){
-            log.error("WebClientResponseException in retrieveAllMovies. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in retrieveAllMovies and the message is {} ", ex.getMessage() + ex);
-            throw new MovieErrorResponse(ex);
-        }
+        return bulkByDefault(() -> execute("retrieveAllMovies", () -> allMovies().block()));
     }
 
     public Movie retrieveMovieById(Integer movieId){
-
-//        http://localhost:8081/movieservice/v1/movie/1
-        try
-        { return webClient.get().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, movieId).
-                retrieve().bodyToMono(Movie.class).block();
-        } catch (WebClientResponseException ex){
-            log.error("WebClientResponseException in retrieveMovieById. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in retrieveMovieById and the message is {} ", ex);
-            throw new MovieErrorResponse(ex);
-        }
+        return toMovie(execute("retrieveMovieById", () -> movieValueById(movieId).block()));
     }
 
 //    /movieservice/v1/movieName?movie_name=Avengers
 
     public List<Movie> retrieveMovieByName(String name){
+        return toMovies(execute("retrieveMovieByName", () -> movieValuesByName(name).block()));
+    }
+
+    //    http://localhost:8081/movieservice/v1/movieYear?year=1950
+    public List<Movie> retrieveMovieByYear(Integer year){
+        return toMovies(execute("retrieveMovieByYear", () -> movieValuesByYear(year).block()));
+    }
+
+    /**
+     * Same as {@link #retrieveMovieById(Integer)}, but decodes straight into the immutable value the
+     * cache keeps, so nothing is copied on the way in or out.
+     */
+    public MovieValue retrieveMovieValueById(Integer movieId){
+        return execute("retrieveMovieValueById", () -> movieValueById(movieId).block());
+    }
+
+    public List<MovieValue> retrieveMovieValuesByName(String name){
+        return execute("retrieveMovieValuesByName", () -> movieValuesByName(name).block());
+    }
+
+    public List<MovieValue> retrieveMovieValuesByYear(Integer year){
+        return execute("retrieveMovieValuesByYear", () -> movieValuesByYear(year).block());
+    }
+
+    public Movie addMovie(Movie newMovie){
+        return execute("addMovie", () -> addedMovie(newMovie).block());
+    }
+
+    public Movie updateMovie(Integer movieId, Movie movie){
+        if (updateCoalescer != null) {
+            return execute("updateMovie", () -> await("updateMovie", updateCoalescer.update(movieId, movie)));
+        }
+        return invalidatingAfter(movieId, () -> execute("updateMovie", () -> updatedMovie(movieId, movie).block()));
+    }
+
+    /**
+     * Same as {@link #updateMovie(Integer, Movie)} without waiting for the answer. With coalescing
+     * on, the future completes when the update that absorbed this one has been answered; failures
+     * complete it with a {@link MovieErrorResponse}.
+     */
+    public CompletableFuture<Movie> updateMovieAsync(Integer movieId, Movie movie){
+        CompletableFuture<Movie> sent = updateCoalescer != null ? updateCoalescer.update(movieId, movie)
+                : invalidatedAfterUpdate(movieId, movie).toFuture();
+        CompletableFuture<Movie> answered = new CompletableFuture<>();
+        sent.whenComplete((updated, ex) -> {
+            if (ex != null) {
+                answered.completeExceptionally(toMovieErrorResponse("updateMovie", unwrap(ex)));
+            } else {
+                answered.complete(updated);
+            }
+        });
+        return answered;
+    }
+
+    /**
+     * Turns on write-behind for updates: updates to one movie id made within the window are
+     * collapsed into a single PUT of the latest state, and every caller gets that PUT's outcome.
+     * Deletes of the id wait for its pending updates first.
+     */
+    public void setUpdateCoalescingWindow(Duration window){
+        UpdateCoalescer previous = updateCoalescer;
+        this.updateCoalescer = new UpdateCoalescer(window.toNanos(), this::invalidatedAfterUpdate);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public long getCoalescedUpdateCount(){
+        return updateCoalescer != null ? updateCoalescer.getCoalescedCount() : 0;
+    }
+
+    public String deleteMovie(Integer movieId){
+        return invalidatingAfter(movieId, () -> execute("deleteMovie", () -> {
+            awaitPendingUpdates(movieId);
+            return deletedMovie(movieId).block();
+        }));
+    }
+
+    /*
+     * The try... methods below make the same calls but report failures as a MovieResult holding a
+     * stackless MovieFailure, so nothing is thrown or wrapped when the service is having a bad day.
+     */
+
+    public MovieResult<List<Movie>> tryRetrieveAllMovies(){
+        return bulkByDefault(() -> attempt("retrieveAllMovies", this::allMovies));
+    }
+
+    public MovieResult<Movie> tryRetrieveMovieById(Integer movieId){
+        return attempt("retrieveMovieById", () -> movieValueById(movieId).map(MovieValue::toMovie));
+    }
+
+    public MovieResult<List<Movie>> tryRetrieveMovieByName(String name){
+        return attempt("retrieveMovieByName", () -> movieValuesByName(name).map(MoviesRestClient::toMovies));
+    }
+
+    public MovieResult<List<Movie>> tryRetrieveMovieByYear(Integer year){
+        return attempt("retrieveMovieByYear", () -> movieValuesByYear(year).map(MoviesRestClient::toMovies));
+    }
+
+    public MovieResult<Movie> tryAddMovie(Movie newMovie){
+        return attempt("addMovie", () -> addedMovie(newMovie));
+    }
+
+    public MovieResult<Movie> tryUpdateMovie(Integer movieId, Movie movie){
+        if (updateCoalescer != null) {
+            return attempt("updateMovie", () -> {
+                CompletableFuture<Movie> update = updateCoalescer.update(movieId, movie);
+                return Mono.fromCallable(() -> await("updateMovie", update));
+            });
+        }
+        return invalidatingAfter(movieId, () -> attempt("updateMovie", () -> updatedMovie(movieId, movie)));
+    }
+
+    public MovieResult<String> tryDeleteMovie(Integer movieId){
+        return invalidatingAfter(movieId, () -> attempt("deleteMovie",
+                () -> Mono.fromRunnable(() -> awaitPendingUpdates(movieId)).then(deletedMovie(movieId))));
+    }
+
+    public String deleteMovieByName(String movieName){
+        String deleteMovieByNameURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1).
+                queryParam("movie_name", movieName).buildAndExpand().toUriString();
+        execute("deleteMovieByName", () -> guarded(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1, client ->
+                client.delete().uri(deleteMovieByNameURI).
+                retrieve().bodyToMono(String.class)).block());
+        return "Movie Deleted Successfully";
+    }
+
+    public Stream<Movie> retrieveAllMoviesPaged(int pageSize){
+        return retrieveAllMoviesPaged(pageSize, 4, 3);
+    }
+
+    /**
+     * Streams the whole catalogue page by page. Up to {@code concurrency} pages are fetched at once,
+     * each page is retried on its own, and movies come out in page order as soon as the pages before
+     * them have arrived. Paging stops at the first page shorter than {@code pageSize}.
+     */
+    public Stream<Movie> retrieveAllMoviesPaged(int pageSize, int concurrency, int pageRetries){
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1 but was " + pageSize);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1 but was " + concurrency);
+        }
+        if (pageRetries < 0) {
+            throw new IllegalArgumentException("pageRetries must not be negative but was " + pageRetries);
+        }
+        // later pages are requested from event loop threads, so carry the caller's deadline and priority over
+        Deadline deadline = Deadline.current();
+        Priority priority = Priority.currentOr(Priority.BULK);
+        return Flux.range(0, Integer.MAX_VALUE).
+                flatMapSequential(page -> priority.call(() -> deadline == null ? retrieveAllMoviesPage(page, pageSize, pageRetries)
+                        : deadline.call(() -> retrieveAllMoviesPage(page, pageSize, pageRetries))), concurrency, 1).
+                takeUntil(movies -> movies.size() < pageSize).
+                flatMapIterable(movies -> movies).
+                onErrorMap(ex -> toMovieErrorResponse("retrieveAllMoviesPaged", ex)).
+                toStream(pageSize);
+    }
+
+    public Stream<Movie> retrieveMoviesByYearRange(int fromYear, int toYear){
+        return retrieveMoviesByYearRange(fromYear, toYear, 4);
+    }
+
+    /**
+     * Movies of every year from {@code fromYear} to {@code toYear}, both included, fetched with up to
+     * {@code concurrency} year lookups in flight. Each year is streamed as soon as the years before it
+     * are done, and a year the service answers with 404 contributes nothing.
+     */
+    public Stream<Movie> retrieveMoviesByYearRange(int fromYear, int toYear, int concurrency){
+        if (fromYear > toYear) {
+            throw new IllegalArgumentException("fromYear " + fromYear + " is after toYear " + toYear);
+        }
+        Deadline deadline = Deadline.current();
+        Priority priority = Priority.currentOr(Priority.INTERACTIVE);
+        return Flux.range(fromYear, toYear - fromYear + 1).
+                flatMapSequential(year -> priority.call(() -> deadline == null ? movieValuesByYearOrEmpty(year)
+                        : deadline.call(() -> movieValuesByYearOrEmpty(year))), concurrency, 1).
+                flatMapIterable(movies -> movies).
+                map(MovieValue::toMovie).
+                onErrorMap(ex -> toMovieErrorResponse("retrieveMoviesByYearRange", ex)).
+                toStream(concurrency);
+    }
+
+    private Mono<List<MovieValue>> movieValuesByYearOrEmpty(Integer year){
+        // the range asks for the neighbouring years itself
+        return movieValuesByYear(year, false).
+                onErrorResume(MoviesRestClient::isNotFound, ex -> Mono.just(Collections.emptyList()));
+    }
+
+    //    http://localhost:8081/movieservice/v1/allMovies?page=0&size=100
+    private Mono<List<Movie>> retrieveAllMoviesPage(int page, int pageSize, int pageRetries){
+        String retrievePageURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.GET_ALL_MOVIES_V1).
+                queryParam("page", page).queryParam("size", pageSize).buildAndExpand().toUriString();
+        return guarded(MoviesAppConstants.GET_ALL_MOVIES_V1, client ->
+                client.get().uri(retrievePageURI).retrieve().bodyToFlux(Movie.class).collectList()).
+                doOnNext(this::indexMovies).
+                retryWhen(pageRetryBackoff(pageRetries, Deadline.current())).
+                onErrorResume(MoviesRestClient::isNotFound, ex -> Mono.just(Collections.emptyList()));
+    }
+
+    /**
+     * Retries a failed page after a jittered backoff that doubles from {@link #PAGE_RETRY_BACKOFF} up
+     * to {@link #PAGE_RETRY_MAX_BACKOFF}, and never sleeps past the deadline. Client errors and calls
+     * we turned down ourselves are not retried.
+     */
+    private static Function<Flux<Throwable>, Flux<Long>> pageRetryBackoff(int pageRetries, Deadline deadline){
+        return errors -> errors.index().concatMap(attempt -> {
+            Throwable ex = attempt.getT2();
+            if (attempt.getT1() >= pageRetries || isClientError(ex) || isRejected(ex)) {
+                return Mono.error(ex);
+            }
+            long backoffMillis = Math.min(PAGE_RETRY_MAX_BACKOFF.toMillis(), PAGE_RETRY_BACKOFF.toMillis() << Math.min(attempt.getT1(), 10));
+            Duration backoff = Duration.ofMillis(ThreadLocalRandom.current().nextLong(backoffMillis / 2, backoffMillis + 1));
+            if (deadline != null && deadline.remaining().compareTo(backoff) < 0) {
+                backoff = deadline.remaining();
+            }
+            return Mono.delay(backoff);
+        });
+    }
+
+    /**
+     * Raw response body of {@link #retrieveAllMovies()} as pooled buffers, for relaying without
+     * decoding. Every emitted buffer must be released with {@link DataBufferUtils#release(DataBuffer)}.
+     */
+    public Flux<DataBuffer> retrieveAllMoviesRaw(){
+        return bulkByDefault(() -> guardedMany(MoviesAppConstants.GET_ALL_MOVIES_V1, client ->
+                client.get().uri(MoviesAppConstants.GET_ALL_MOVIES_V1).retrieve().bodyToFlux(DataBuffer.class)));
+    }
+
+    public long retrieveAllMoviesRaw(OutputStream target){
+        return retrieveAllMoviesRaw(Channels.newChannel(target));
+    }
+
+    public long retrieveAllMoviesRaw(WritableByteChannel target){
+        return execute("retrieveAllMoviesRaw", () -> relay(retrieveAllMoviesRaw(), target));
+    }
+
+    public Flux<DataBuffer> retrieveMovieByYearRaw(Integer year){
+        String retrieveByYearURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1).
+                queryParam("year", year).buildAndExpand().toUriString();
+        return guardedMany(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1, client ->
+                client.get().uri(retrieveByYearURI).retrieve().bodyToFlux(DataBuffer.class));
+    }
+
+    public long retrieveMovieByYearRaw(Integer year, OutputStream target){
+        return retrieveMovieByYearRaw(year, Channels.newChannel(target));
+    }
+
+    public long retrieveMovieByYearRaw(Integer year, WritableByteChannel target){
+        return execute("retrieveMovieByYearRaw", () -> relay(retrieveMovieByYearRaw(year), target));
+    }
+
+    /**
+     * All movies with only the given fields. The service is asked for just those fields, and the
+     * response is decoded into {@link MovieView}s without touching the others.
+     */
+    public List<MovieView> retrieveAllMoviesProjected(Set<MovieField> fields){
+        String retrieveAllURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.GET_ALL_MOVIES_V1).
+                queryParam("fields", fieldsParam(fields)).buildAndExpand().toUriString();
+        return bulkByDefault(() -> execute("retrieveAllMoviesProjected", () -> guarded(MoviesAppConstants.GET_ALL_MOVIES_V1, client ->
+                projected(client.get().uri(retrieveAllURI).retrieve().bodyToFlux(DataBuffer.class), fields)).block()));
+    }
+
+    public List<MovieView> retrieveMovieByYearProjected(Integer year, Set<MovieField> fields){
+        String retrieveByYearURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1).
+                queryParam("year", year).queryParam("fields", fieldsParam(fields)).buildAndExpand().toUriString();
+        return execute("retrieveMovieByYearProjected", () -> guarded(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1, client ->
+                projected(client.get().uri(retrieveByYearURI).retrieve().bodyToFlux(DataBuffer.class), fields)).block());
+    }
+
+    public List<Movie> retrieveAllMovies(Duration timeout){
+        return Deadline.within(timeout, this::retrieveAllMovies);
+    }
+
+    public Movie retrieveMovieById(Integer movieId, Duration timeout){
+        return Deadline.within(timeout, () -> retrieveMovieById(movieId));
+    }
+
+    public List<Movie> retrieveMovieByName(String name, Duration timeout){
+        return Deadline.within(timeout, () -> retrieveMovieByName(name));
+    }
+
+    public List<Movie> retrieveMovieByYear(Integer year, Duration timeout){
+        return Deadline.within(timeout, () -> retrieveMovieByYear(year));
+    }
+
+    public Movie addMovie(Movie newMovie, Duration timeout){
+        return Deadline.within(timeout, () -> addMovie(newMovie));
+    }
+
+    public Movie updateMovie(Integer movieId, Movie movie, Duration timeout){
+        return Deadline.within(timeout, () -> updateMovie(movieId, movie));
+    }
+
+    public String deleteMovie(Integer movieId, Duration timeout){
+        return Deadline.within(timeout, () -> deleteMovie(movieId));
+    }
+
+    public String deleteMovieByName(String movieName, Duration timeout){
+        return Deadline.within(timeout, () -> deleteMovieByName(movieName));
+    }
+
+    public WarmUpReport warmUp(int connections){
+        return warmUp(connections, 0);
+    }
+
+    /**
+     * Pays the costs of the first calls up front. The codecs are loaded and exercised, each client
+     * this one sends through opens up to {@code connections} pooled connections, and
+     * {@code syntheticRequests} read lookups are run through the limiters, the load balancer and the
+     * codecs. Nothing is written: the lookups bypass the cache, the actor index and the prefetcher.
+     */
+    public WarmUpReport warmUp(int connections, int syntheticRequests){
+        long start = System.nanoTime();
+        warmUpCodecs();
+        int opened = 0;
+        for (WebClient client : warmUpClients()) {
+            opened += openConnections(client, connections);
+        }
+        int failures = 0;
+        MovieValue seen = null;
+        // ids first, then names and years of the movies they returned, so lookups hit real data
+        for (int i = 0; i < syntheticRequests; i++) {
+            MovieResult<?> result;
+            if (seen == null || i % 3 == 0) {
+                int movieId = 1 + (i / 3) % WARM_UP_MOVIE_IDS;
+                MovieResult<MovieValue> byId = attempt("warmUp", () -> requestMovieValueById(movieId));
+                seen = byId.isSuccess() && byId.orElse(null) != null ? byId.orElse(null) : seen;
+                result = byId;
+            } else if (i % 3 == 1) {
+                String name = seen.getName();
+                result = attempt("warmUp", () -> requestMovieValuesByName(name));
+            } else {
+                Integer year = seen.getYear();
+                result = attempt("warmUp", () -> requestMovieValuesByYear(year));
+            }
+            if (!result.isSuccess()) {
+                failures++;
+            }
+        }
+        return new WarmUpReport(Duration.ofNanos(System.nanoTime() - start), opened, syntheticRequests, failures);
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter(String endpoint) {
+        return concurrencyLimiters.get(endpoint);
+    }
+
+    public void setRateLimiter(String endpoint, TokenBucketRateLimiter rateLimiter) {
+        rateLimiters.put(endpoint, rateLimiter);
+    }
+
+    public TokenBucketRateLimiter getRateLimiter(String endpoint) {
+        return rateLimiters.get(endpoint);
+    }
+
+    /**
+     * Publishes the ids this client writes to the bus, and drops the cached entries of ids other
+     * instances published, or the misses of movies they added.
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        invalidationBus.subscribe(movieId -> {
+            if (movieCache != null) {
+                movieCache.invalidate(movieId);
+            }
+        });
+        invalidationBus.subscribeAdded(movieId -> {
+            if (movieCache != null) {
+                movieCache.movieAddedElsewhere(movieId);
+            }
+        });
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Turns on prefetching into the cache: movies found by name are cached for the lookups by id
+     * that tend to follow, and a year lookup fetches the years on either side with at most
+     * {@code maxInFlight} prefetches in flight, while the year endpoint has capacity to spare.
+     */
+    public void enablePrefetching(int maxInFlight) {
+        if (movieCache == null) {
+            throw new IllegalStateException("Prefetching needs a MovieCache");
+        }
+        this.prefetcher = new MoviePrefetcher(movieCache, this::fetchMovieValuesByYear,
+                () -> hasSpareCapacity(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1), maxInFlight, 20);
+    }
+
+    public MoviePrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Reports the phase timings of one in {@code sampleOneIn} exchanges to the listener. Only the
+     * total is known unless the client was built with {@link PhaseTiming}'s hooks installed.
+     */
+    public void setPhaseTimingListener(PhaseTimingListener listener, int sampleOneIn) {
+        if (sampleOneIn < 1) {
+            throw new IllegalArgumentException("sampleOneIn must be at least 1 but was " + sampleOneIn);
+        }
+        this.phaseTimingSampleOneIn = sampleOneIn;
+        this.phaseTimingListener = listener;
+    }
+
+    private Mono<List<Movie>> allMovies(){
+        return guarded(MoviesAppConstants.GET_ALL_MOVIES_V1, client ->
+                client.get().uri(MoviesAppConstants.GET_ALL_MOVIES_V1).retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).
+                bodyToFlux(Movie.class).collectList()).
+                doOnNext(this::indexMovies);
+    }
+
+    //        http://localhost:8081/movieservice/v1/movie/1
+    private Mono<MovieValue> movieValueById(Integer movieId){
+        if (movieCache == null) {
+            return fetchMovieValueById(movieId);
+        }
+        MovieFailure missing = movieCache.missingId(movieId);
+        if (missing != null) {
+            return Mono.error(missing);
+        }
+        MovieCache.Entry<MovieValue> cached = movieCache.movieById(movieId);
+        if (prefetcher != null) {
+            prefetcher.idLookedUp(movieId, cached != null);
+        }
+        return cachedRead(cached, () -> fetchMovieValueById(movieId),
+                movie -> movieCache.putMovie(movieId, movie)).
+                onErrorMap(MoviesRestClient::isNotFound, ex -> notFound(ex, failure -> movieCache.putMissingId(movieId, failure)));
+    }
+
+    private Mono<MovieValue> fetchMovieValueById(Integer movieId){
+        return requestMovieValueById(movieId).
+                doOnNext(movie -> indexMovie(movie.getMovieId(), movie.getCast()));
+    }
+
+    // the request...() exchanges leave the cache, the index and the prefetcher alone
+    private Mono<MovieValue> requestMovieValueById(Integer movieId){
+        return guarded(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, client ->
+                client.get().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, movieId).
+                retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).bodyToMono(MovieValue.class));
+    }
+
+    private Mono<List<MovieValue>> requestMovieValuesByName(String name){
         String retrieveByNameURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1).
                 queryParam("movie_name", name).buildAndExpand().toUriString();
-        try {
-           return webClient.get().uri(retrieveByNameURI).retrieve().bodyToFlux(Movie.class).collectList().block();
-        } catch (WebClientResponseException ex){
-            log.error("WebClientResponseException in retrieveMovieByName. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in retrieveMovieByName and the message is {} ", ex);
-            throw new MovieErrorResponse(ex);
+        return guarded(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1, client ->
+                client.get().uri(retrieveByNameURI).retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).bodyToFlux(MovieValue.class).collectList());
+    }
+
+    private Mono<List<MovieValue>> movieValuesByName(String name){
+        Supplier<Mono<List<MovieValue>>> fetch = () -> requestMovieValuesByName(name).
+                doOnNext(this::indexMovieValues).
+                doOnNext(movies -> {
+                    if (prefetcher != null) {
+                        prefetcher.afterNameSearch(movies);
+                    }
+                });
+        if (movieCache == null) {
+            return fetch.get();
         }
+        MovieFailure missing = movieCache.missingName(name);
+        if (missing != null) {
+            return Mono.error(missing);
+        }
+        return cachedRead(movieCache.moviesByName(name), fetch, movies -> movieCache.putMoviesByName(name, movies)).
+                onErrorMap(MoviesRestClient::isNotFound, ex -> notFound(ex, failure -> movieCache.putMissingName(name, failure)));
     }
 
-    //    http://localhost:8081/movieservice/v1/movieYear?year=1950
-    public List<Movie> retrieveMovieByYear(Integer year){
-        String retrieveByNameURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1).
+    private Mono<List<MovieValue>> movieValuesByYear(Integer year){
+        return movieValuesByYear(year, true);
+    }
+
+    private Mono<List<MovieValue>> movieValuesByYear(Integer year, boolean prefetchNeighbours){
+        if (movieCache == null) {
+            return fetchMovieValuesByYear(year);
+        }
+        MovieFailure missing = movieCache.missingYear(year);
+        if (missing != null) {
+            return Mono.error(missing);
+        }
+        MovieCache.Entry<List<MovieValue>> cached = movieCache.moviesByYear(year);
+        if (prefetcher != null) {
+            prefetcher.yearLookedUp(year, cached != null);
+        }
+        Mono<List<MovieValue>> movies = cachedRead(cached, () -> fetchMovieValuesByYear(year),
+                found -> movieCache.putMoviesByYear(year, found)).
+                onErrorMap(MoviesRestClient::isNotFound, ex -> notFound(ex, failure -> movieCache.putMissingYear(year, failure)));
+        if (prefetcher == null || !prefetchNeighbours) {
+            return movies;
+        }
+        MoviePrefetcher yearPrefetcher = prefetcher;
+        return movies.doOnNext(found -> yearPrefetcher.afterYearLookup(year));
+    }
+
+    private Mono<List<MovieValue>> fetchMovieValuesByYear(int year){
+        return requestMovieValuesByYear(year).
+                doOnNext(this::indexMovieValues);
+    }
+
+    private Mono<List<MovieValue>> requestMovieValuesByYear(int year){
+        String retrieveByYearURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1).
                 queryParam("year", year).buildAndExpand().toUriString();
+        return guarded(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1, client ->
+                client.get().uri(retrieveByYearURI).retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).bodyToFlux(MovieValue.class).collectList());
+    }
+
+    private Mono<Movie> addedMovie(Movie newMovie){
+        // encoded once here, every attempt sends the same bytes
+        byte[] body = MovieJsonEncoder.encode(newMovie);
+        Mono<Movie> added = guarded(MoviesAppConstants.ADD_MOVIE_V1, client ->
+                client.post().uri(MoviesAppConstants.ADD_MOVIE_V1).contentType(MediaType.APPLICATION_JSON).syncBody(body).
+                retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).bodyToMono(Movie.class)).
+                doOnNext(movie -> indexMovie(movie.getMovie_id(), movie.getCast()));
+        if (invalidationBus != null) {
+            // other instances may have remembered the new id, its year or a name it matches as missing
+            added = added.doOnNext(movie -> {
+                if (movie.getMovie_id() != null) {
+                    invalidationBus.publishAdded(movie.getMovie_id());
+                }
+            });
+        }
+        if (movieCache == null) {
+            return added;
+        }
+        return added.doOnNext(movie -> movieCache.movieAdded(movie.getMovie_id(),
+                movie.getYear() != null ? movie.getYear() : newMovie.getYear()));
+    }
+
+    private Mono<Movie> updatedMovie(Integer movieId, Movie movie){
+        byte[] body = MovieJsonEncoder.encode(movie);
+        return guarded(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, client ->
+                client.put().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, movieId).contentType(MediaType.APPLICATION_JSON).syncBody(body).
+                retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).bodyToMono(Movie.class)).
+                doOnNext(updated -> {
+                    indexMovie(updated.getMovie_id() != null ? updated.getMovie_id() : movieId.longValue(), updated.getCast());
+                    if (movieCache != null) {
+                        movieCache.movieWritten(movieId, updated.getName(), updated.getYear());
+                    }
+                });
+    }
+
+    private Mono<String> deletedMovie(Integer movieId){
+        return guarded(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, client ->
+                client.delete().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, movieId).
+                retrieve().onStatus(HttpStatus::isError, MoviesRestClient::statusFailure).bodyToMono(String.class)).
+                doOnSuccess(deleted -> {
+                    if (actorIndex != null) {
+                        actorIndex.remove(movieId);
+                    }
+                });
+    }
+
+    private static void warmUpCodecs(){
+        ExchangeStrategies strategies = ExchangeStrategies.withDefaults();
+        warmUpResponse(strategies).bodyToFlux(Movie.class).collectList().block();
+        warmUpResponse(strategies).bodyToFlux(MovieValue.class).collectList().block();
+        warmUpResponse(strategies).bodyToMono(String.class).block();
+        MovieJsonEncoder.encode(new Movie(null, "Warm Up", "Jane Doe", 2000, null));
         try {
-            return webClient.get().uri(retrieveByNameURI).retrieve().bodyToFlux(Movie.class).collectList().block();
-        } catch (WebClientResponseException ex){
-            log.error("WebClientResponseException in retrieveMovieByYear. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in retrieveMovieByYear and the message is {} ", ex);
-            throw new MovieErrorResponse(ex);
+            MovieProjectionDecoder.decodeList(new ByteArrayInputStream(WARM_UP_MOVIES.getBytes(StandardCharsets.UTF_8)),
+                    EnumSet.allOf(MovieField.class));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
     }
 
-    public Movie addMovie(Movie newMovie){
+    private static ClientResponse warmUpResponse(ExchangeStrategies strategies){
+        return ClientResponse.create(HttpStatus.OK, strategies).
+                header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                body(WARM_UP_MOVIES).
+                build();
+    }
+
+    private Set<WebClient> warmUpClients(){
+        Set<WebClient> clients = new LinkedHashSet<>();
+        if (webClient != null) {
+            clients.add(webClient);
+        }
+        if (bulkWebClient != null) {
+            clients.add(bulkWebClient);
+        }
+        if (loadBalancer != null) {
+            for (MoviesLoadBalancer.Backend backend : loadBalancer.getBackends()) {
+                clients.add(backend.getWebClient());
+                if (backend.getBulkWebClient() != null) {
+                    clients.add(backend.getBulkWebClient());
+                }
+            }
+        }
+        return clients;
+    }
+
+    // exchanges in flight together each take a connection of their own, and any answer, even a 404,
+    // hands it back to the pool open
+    private static int openConnections(WebClient client, int connections){
+        Long answered = Flux.range(0, connections).
+                flatMap(i -> client.get().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, 0).exchange().
+                        flatMap(response -> response.bodyToMono(Void.class).thenReturn(response.rawStatusCode())).
+                        timeout(Duration.ofSeconds(5)).
+                        onErrorResume(ex -> Mono.empty()), connections).
+                count().
+                block();
+        return answered != null ? answered.intValue() : 0;
+    }
+
+    private static String fieldsParam(Set<MovieField> fields){
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is needed");
+        }
+        StringJoiner joined = new StringJoiner(",");
+        for (MovieField field : EnumSet.copyOf(fields)) {
+            joined.add(field.getJsonName());
+        }
+        return joined.toString();
+    }
+
+    private static Mono<List<MovieView>> projected(Flux<DataBuffer> body, Set<MovieField> fields){
+        return DataBufferUtils.join(body).map(buffer -> {
+            try {
+                return MovieProjectionDecoder.decodeList(buffer.asInputStream(), fields);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        });
+    }
+
+    private void indexMovie(Long movieId, String cast){
+        if (actorIndex != null) {
+            actorIndex.add(movieId, cast);
+        }
+    }
+
+    private void indexMovies(List<Movie> movies){
+        if (actorIndex != null) {
+            for (Movie movie : movies) {
+                actorIndex.add(movie.getMovie_id(), movie.getCast());
+            }
+        }
+    }
+
+    private void indexMovieValues(List<MovieValue> movies){
+        if (actorIndex != null) {
+            for (MovieValue movie : movies) {
+                actorIndex.add(movie.getMovieId(), movie.getCast());
+            }
+        }
+    }
+
+    // whole catalogue reads are bulk work unless the caller made a priority current
+    private static <T> T bulkByDefault(Supplier<T> call){
+        return Priority.current() != null ? call.get() : Priority.BULK.call(call);
+    }
+
+    private <T> T invalidatingAfter(Integer movieId, Supplier<T> call){
         try {
-            return webClient.post().uri(MoviesAppConstants.ADD_MOVIE_V1).syncBody(newMovie).
-                    retrieve().bodyToMono(Movie.class).block();
-        } catch(WebClientResponseException ex){
-            log.error("WebClientResponseException in addMovie. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in addMovie and the message is {} ", ex);
-            throw new MovieErrorResponse(ex);
+            return call.get();
+        } finally {
+            invalidate(movieId);
         }
     }
 
-    public Movie updateMovie(Integer movieId, Movie movie){
+    private Mono<Movie> invalidatedAfterUpdate(Integer movieId, Movie movie){
+        return Mono.defer(() -> updatedMovie(movieId, movie)).doFinally(signal -> invalidate(movieId));
+    }
+
+    private void invalidate(Integer movieId){
+        if (movieId == null) {
+            return;
+        }
+        if (movieCache != null) {
+            movieCache.invalidate(movieId);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(movieId);
+        }
+    }
+
+    // a delete must not be overtaken by an update of the same movie that is still held back
+    private void awaitPendingUpdates(Integer movieId){
+        if (updateCoalescer != null) {
+            await("deleteMovie", updateCoalescer.drain(movieId).handle((ignored, ex) -> null));
+        }
+    }
+
+    // the caller waits no longer than its deadline, the update it waits for is still sent
+    private static <T> T await(String operation, CompletableFuture<T> future){
+        Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return join(future);
+        }
         try {
-            return webClient.put().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, movieId).syncBody(movie).
-                    retrieve().bodyToMono(Movie.class).block();
-        } catch(WebClientResponseException ex){
-            log.error("WebClientResponseException in updateMovie. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in updateMovie and the message is {} ", ex);
+            return future.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            throw new MovieFailure(MovieFailure.Kind.REJECTED, "Deadline of " + deadline.getTimeout().toMillis() +
+                    " ms exceeded waiting for " + operation);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new MovieErrorResponse(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw new MovieErrorResponse(ex);
         }
     }
 
-    public String deleteMovie(Integer movieId){
+    private static <T> T join(CompletableFuture<T> future){
         try {
-            return webClient.delete().uri(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, movieId).
-                    retrieve().bodyToMono(String.class).block();
-        } catch(WebClientResponseException ex){
-            log.error("WebClientResponseException in deleteMovie. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in deleteMovie and the message is {} ", ex);
-            throw new MovieErrorResponse(ex);
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = unwrap(ex);
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : ex;
         }
     }
 
+    private static Throwable unwrap(Throwable ex){
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
 
-    public String deleteMovieByName(String movieName){
+    private static Movie toMovie(MovieValue movie){
+        return movie != null ? movie.toMovie() : null;
+    }
+
+    private static List<Movie> toMovies(List<MovieValue> movies){
+        if (movies == null) {
+            return null;
+        }
+        List<Movie> converted = new ArrayList<>(movies.size());
+        for (MovieValue movie : movies) {
+            converted.add(movie.toMovie());
+        }
+        return converted;
+    }
+
+    private <T> T execute(String operation, Supplier<T> call) {
         try {
-            String deleteMovieByNameURI = UriComponentsBuilder.fromUriString(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1).
-                    queryParam("movie_name", movieName).buildAndExpand().toUriString();
-            webClient.delete().uri(deleteMovieByNameURI).
-                    retrieve().bodyToMono(String.class).block();
-        } catch(WebClientResponseException ex){
-            log.error("WebClientResponseException in deleteMovie. Status code is {} and the message is {} ", ex.getRawStatusCode(), ex.getResponseBodyAsString());
-            throw new MovieErrorResponse(ex.getStatusText(), ex);
-        } catch (Exception ex){
-            log.error("Exception in deleteMovie and the message is {} ", ex);
-            throw new MovieErrorResponse(ex);
+            return call.get();
+        } catch (RuntimeException ex){
+            throw toMovieErrorResponse(operation, ex);
         }
-        return "Movie Deleted Successfully";
+    }
+
+    private MovieErrorResponse toMovieErrorResponse(String operation, Throwable ex) {
+        logFailure(operation, ex);
+        if (ex instanceof WebClientResponseException) {
+            WebClientResponseException responseException = (WebClientResponseException) ex;
+            return new MovieErrorResponse(responseException.getStatusText(), responseException);
+        }
+        if (ex instanceof MovieErrorResponse) {
+            return (MovieErrorResponse) ex;
+        }
+        return new MovieErrorResponse(ex instanceof Exception ? (Exception) ex : new RuntimeException(ex));
+    }
+
+    /**
+     * Runs the call to completion without throwing; errors travel as a value down to the result.
+     * The call is assembled on subscription, so even a bad argument ends up as a failure.
+     */
+    private <T> MovieResult<T> attempt(String operation, Supplier<Mono<T>> call) {
+        return Mono.defer(call).
+                subscriberContext(Context.of(STACKLESS_FAILURES, true)).
+                map(MovieResult::success).
+                onErrorResume(ex -> Mono.just(MovieResult.failure(toMovieFailure(operation, ex)))).
+                defaultIfEmpty(MovieResult.success(null)).
+                block();
+    }
+
+    private MovieFailure toMovieFailure(String operation, Throwable ex) {
+        logFailure(operation, ex);
+        if (ex instanceof MovieFailure) {
+            return (MovieFailure) ex;
+        }
+        if (ex instanceof WebClientResponseException) {
+            WebClientResponseException responseException = (WebClientResponseException) ex;
+            return new MovieFailure(responseException.getRawStatusCode(), responseException.getStatusText(),
+                    responseException.getResponseBodyAsString());
+        }
+        if (ex instanceof MovieErrorResponse) {
+            return new MovieFailure(MovieFailure.Kind.REJECTED, ex.getMessage());
+        }
+        if (ex instanceof NullPointerException || ex instanceof IllegalArgumentException) {
+            // a bad argument, the call never left this client
+            return new MovieFailure(MovieFailure.Kind.REJECTED, ex.toString());
+        }
+        return new MovieFailure(MovieFailure.Kind.TRANSPORT, ex.toString());
+    }
+
+    /**
+     * Fails an error response the way retrieve() does, except under the try... methods, which get the
+     * stackless MovieFailure directly. A 429 keeps the full exception, the rate limiter reads its Retry-After.
+     */
+    private static Mono<? extends Throwable> statusFailure(ClientResponse response) {
+        int status = response.rawStatusCode();
+        String statusText = response.statusCode().getReasonPhrase();
+        Charset charset = response.headers().contentType().map(MimeType::getCharset).orElse(StandardCharsets.ISO_8859_1);
+        return Mono.subscriberContext().flatMap(context -> response.bodyToMono(byte[].class).
+                defaultIfEmpty(new byte[0]).
+                map(body -> context.getOrDefault(STACKLESS_FAILURES, false) && status != HttpStatus.TOO_MANY_REQUESTS.value()
+                        ? new MovieFailure(status, statusText, new String(body, charset))
+                        : WebClientResponseException.create(status, statusText, response.headers().asHttpHeaders(), body, charset)));
+    }
+
+    // status of a failed response however it was reported, or 0 when there was none
+    private static int statusOf(Throwable ex) {
+        if (ex instanceof WebClientResponseException) {
+            return ((WebClientResponseException) ex).getRawStatusCode();
+        }
+        if (ex instanceof MovieFailure) {
+            return ((MovieFailure) ex).getStatusCode();
+        }
+        return 0;
+    }
+
+    // during an outage every call fails the same way, so only a sample of the failures is logged
+    private void logFailure(String operation, Throwable ex) {
+        long suppressed = errorLogSampler.tryLog(operation);
+        if (suppressed == ErrorLogSampler.SUPPRESSED) {
+            return;
+        }
+        if (suppressed > 0) {
+            log.error("Suppressed {} similar errors in {} ", suppressed, operation);
+        }
+        if (ex instanceof WebClientResponseException) {
+            WebClientResponseException responseException = (WebClientResponseException) ex;
+            log.error("WebClientResponseException in {}. Status code is {} and the message is {} ", operation, responseException.getRawStatusCode(), responseException.getResponseBodyAsString());
+        } else if (ex instanceof MovieErrorResponse) {
+            log.error("MovieErrorResponse in {} and the message is {} ", operation, ex.getMessage());
+        } else {
+            log.error("Exception in {} and the message is {} ", operation, ex.getMessage(), ex);
+        }
+    }
+
+    private <T> Mono<T> guarded(String endpoint, Function<WebClient, Mono<T>> exchange) {
+        if (loadBalancer == null && concurrencyLimiterFactory == null && rateLimiters.isEmpty() && Deadline.current() == null
+                && phaseTimingListener == null) {
+            return exchange.apply(laneClient());
+        }
+        // singleOrEmpty only emits once the exchange completed, so the guards have settled when block() returns
+        return guardedMany(endpoint, client -> exchange.apply(client).flux()).singleOrEmpty();
+    }
+
+    private <T> Flux<T> guardedMany(String endpoint, Function<WebClient, Flux<T>> exchange) {
+        return deadlined(endpoint, rateLimited(endpoint, limited(endpoint, timed(endpoint, balanced(exchange)))));
+    }
+
+    // each attempt is timed on its own, so a retried exchange reports every try
+    private <T> Flux<T> timed(String endpoint, Flux<T> exchange) {
+        PhaseTimingListener listener = phaseTimingListener;
+        if (listener == null) {
+            return exchange;
+        }
+        return Flux.defer(() -> ThreadLocalRandom.current().nextInt(phaseTimingSampleOneIn) != 0 ? exchange
+                : PhaseTiming.timed(exchange, timings -> listener.onTimed(endpoint, timings)));
+    }
+
+    // the replica is picked per attempt, so a retried exchange can land on another one
+    private <T> Flux<T> balanced(Function<WebClient, Flux<T>> exchange) {
+        if (loadBalancer == null || (isBulkLane() && !loadBalancer.hasBulkPools())) {
+            return exchange.apply(laneClient());
+        }
+        return loadBalancer.exchange(exchange, Priority.current() == Priority.BULK);
+    }
+
+    private WebClient laneClient() {
+        return isBulkLane() ? bulkWebClient : webClient;
+    }
+
+    private boolean isBulkLane() {
+        return bulkWebClient != null && Priority.current() == Priority.BULK;
+    }
+
+    /**
+     * Writes each buffer to the target on the calling thread and releases it, so the body is copied
+     * once from the network buffer to the target and never decoded.
+     */
+    private static long relay(Flux<DataBuffer> body, WritableByteChannel target) {
+        AtomicLong written = new AtomicLong();
+        try {
+            // one buffer is asked for at a time and handed back once written, or once writing it
+            // failed, so none is left unreleased in a prefetch queue when the relay stops early
+            DataBufferUtils.write(body, target).
+                    doOnNext(buffer -> {
+                        written.addAndGet(buffer.readableByteCount());
+                        DataBufferUtils.release(buffer);
+                    }).
+                    blockLast();
+        } catch (RuntimeException ex) {
+            Throwable cause = Exceptions.unwrap(ex);
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw ex;
+        }
+        return written.get();
+    }
+
+    /**
+     * Bounds the whole exchange, including rate limit waits and retries, by the caller's deadline.
+     * Timing out cancels the exchange, which closes its connection instead of waiting for the body.
+     * The budget left is looked up on every subscription, so a resubscribed exchange never gets
+     * more time than the deadline still allows.
+     */
+    private <T> Flux<T> deadlined(String endpoint, Flux<T> exchange) {
+        Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return exchange;
+        }
+        return Flux.defer(() -> {
+            if (deadline.isExpired()) {
+                return Flux.error(new MovieFailure(MovieFailure.Kind.REJECTED, "Deadline of " +
+                        deadline.getTimeout().toMillis() + " ms exceeded before calling " + endpoint));
+            }
+            // every element re-arms the timer with what is left, so the whole stream shares one budget
+            return exchange.timeout(Mono.delay(deadline.remaining()), element -> Mono.delay(deadline.remaining()), Flux.defer(() ->
+                    Flux.error(new MovieFailure(MovieFailure.Kind.REJECTED, "Deadline of " +
+                            deadline.getTimeout().toMillis() + " ms exceeded calling " + endpoint))));
+        });
+    }
+
+    /**
+     * Spaces exchanges out to the endpoint's token bucket rate. A 429 pauses the bucket for the
+     * Retry-After the service asked for and the exchange is retried once the bucket resumes.
+     */
+    private <T> Flux<T> rateLimited(String endpoint, Flux<T> exchange) {
+        TokenBucketRateLimiter rateLimiter = rateLimiters.get(endpoint);
+        if (rateLimiter == null) {
+            return exchange;
+        }
+        return Flux.defer(() -> {
+            long waitNanos = rateLimiter.reserve();
+            if (waitNanos < 0) {
+                return Flux.error(new MovieFailure(MovieFailure.Kind.REJECTED, "Rate limit exceeded for " + endpoint));
+            }
+            return waitNanos == 0 ? exchange : exchange.delaySubscription(Duration.ofNanos(waitNanos));
+        }).doOnError(MoviesRestClient::isTooManyRequests,
+                ex -> rateLimiter.pauseFor(retryAfter((WebClientResponseException) ex))).
+                retry(rateLimiter.getMaxRetries(), MoviesRestClient::isTooManyRequests);
+    }
+
+    private static boolean isClientError(Throwable ex) {
+        int status = statusOf(ex);
+        return status >= 400 && status < 500;
+    }
+
+    private static boolean isRejected(Throwable ex) {
+        return ex instanceof MovieFailure && ((MovieFailure) ex).getKind() == MovieFailure.Kind.REJECTED;
+    }
+
+    private static boolean isNotFound(Throwable ex) {
+        return statusOf(ex) == HttpStatus.NOT_FOUND.value();
+    }
+
+    private static MovieFailure notFound(Throwable ex) {
+        if (ex instanceof MovieFailure) {
+            return (MovieFailure) ex;
+        }
+        WebClientResponseException responseException = (WebClientResponseException) ex;
+        return new MovieFailure(responseException.getRawStatusCode(), responseException.getStatusText(),
+                responseException.getResponseBodyAsString());
+    }
+
+    // the first 404 fails with the same stackless failure that the negative cache replays afterwards
+    private static MovieFailure notFound(Throwable ex, Consumer<MovieFailure> remember) {
+        MovieFailure failure = notFound(ex);
+        remember.accept(failure);
+        return failure;
+    }
+
+    private static boolean isTooManyRequests(Throwable ex) {
+        return ex instanceof WebClientResponseException
+                && ((WebClientResponseException) ex).getRawStatusCode() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private static Duration retryAfter(WebClientResponseException ex) {
+        String retryAfter = ex.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) {
+            return Duration.ofSeconds(1);
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                Duration untilDate = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            } catch (DateTimeParseException ex2) {
+                return Duration.ofSeconds(1);
+            }
+        }
+    }
+
+    /**
+     * Runs the exchange under the endpoint's adaptive concurrency limit, rejecting it when the limit
+     * is reached and no permit frees up within the limiter's queue wait, instead of piling more load
+     * onto a slow service.
+     */
+    private <T> Flux<T> limited(String endpoint, Flux<T> exchange) {
+        if (concurrencyLimiterFactory == null) {
+            return exchange;
+        }
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiters.computeIfAbsent(endpoint, e -> concurrencyLimiterFactory.get());
+        return limiter.acquire(Priority.currentOr(Priority.INTERACTIVE)).
+                switchIfEmpty(Mono.defer(() -> Mono.error(new MovieFailure(MovieFailure.Kind.REJECTED,
+                        "Concurrency limit of " + limiter.getLimit() + " reached for " + endpoint)))).
+                flatMapMany(permit -> exchange.
+                    doOnComplete(permit::onSuccess).
+                    doOnError(ex -> {
+                        if (isOverload(ex)) {
+                            permit.onDropped();
+                        } else {
+                            permit.onSuccess();
+                        }
+                    }).
+                    doOnCancel(permit::onCancel));
+    }
+
+    // prefetches neither spend rate limit tokens nor take more than half of the concurrency limit
+    private boolean hasSpareCapacity(String endpoint) {
+        if (rateLimiters.containsKey(endpoint)) {
+            return false;
+        }
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiters.get(endpoint);
+        return limiter == null || limiter.getInFlight() < limiter.getLimit() / 2;
+    }
+
+    private static boolean isOverload(Throwable ex) {
+        int status = statusOf(ex);
+        return status == 0 || status >= 500 || status == 429;
+    }
+
+    /**
+     * Serves fresh cache entries directly, stale ones while refreshing them in the background, and
+     * falls back to a stale entry when the service fails with a 5xx or never answers.
+     */
+    private <T> Mono<T> cachedRead(MovieCache.Entry<T> cached, Supplier<Mono<T>> fetch, Consumer<T> store) {
+        if (movieCache == null) {
+            return fetch.get();
+        }
+        if (cached != null && cached.isFresh()) {
+            return Mono.just(cached.value());
+        }
+        if (cached != null && cached.isStale()) {
+            if (cached.tryStartRevalidation()) {
+                // nobody waits for the refresh, so the caller's deadline must not cancel it
+                Deadline.callWith(null, () -> Priority.BULK.call(() -> fetch.get().
+                        doFinally(signal -> cached.revalidationEnded()).
+                        subscribe(store, ex -> log.warn("Background revalidation failed and the message is {} ", ex.getMessage()))));
+            }
+            movieCache.recordStaleServe();
+            return Mono.just(cached.value());
+        }
+        return fetch.get().
+                doOnNext(store).
+                onErrorResume(ex -> cached != null && cached.isUsableOnError() && !isClientError(ex), ex -> {
+                    if (statusOf(ex) != 0) {
+                        log.warn("Serving stale data after status code {} ", statusOf(ex));
+                    } else {
+                        log.warn("Serving stale data after {} ", ex.getMessage());
+                    }
+                    movieCache.recordStaleIfErrorServe();
+                    return Mono.just(cached.value());
+                });
     }
 }
@@ -0,0 +1,150 @@
+package com.learnwiremock.service;
+
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.exception.MovieFailure;
+import com.learnwiremock.resilience.Deadline;
+import com.learnwiremock.resilience.Priority;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Holds updates back for a window per movie id and sends only the last one, completing every
+ * caller of that window with its outcome. Sends for one id never overlap, so they reach the service
+ * in the order they were made. A send runs with the deadline and priority of the update it sends.
+ */
+final class UpdateCoalescer {
+
+    private static final CompletableFuture<Object> DONE = CompletableFuture.completedFuture(null);
+
+    private final long windowNanos;
+    private final BiFunction<Integer, Movie, Mono<Movie>> send;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<Integer, Pending> pending = new ConcurrentHashMap<>();
+    // the last send of each id that may still be running, later sends queue behind it
+    private final ConcurrentHashMap<Integer, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    UpdateCoalescer(long windowNanos, BiFunction<Integer, Movie, Mono<Movie>> send) {
+        this.windowNanos = windowNanos;
+        this.send = send;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "movie-update-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Holds the update back, or fails it with a {@link MovieFailure} once the coalescer is shut down.
+     */
+    CompletableFuture<Movie> update(Integer movieId, Movie movie) {
+        if (scheduler.isShutdown()) {
+            return failed(shutDown());
+        }
+        Update update = new Update(movie, Deadline.current(), Priority.current());
+        Pending entry = pending.compute(movieId, (id, waiting) -> {
+            if (waiting == null) {
+                Pending created = new Pending(update);
+                try {
+                    scheduler.schedule(() -> flush(id, created), windowNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException ex) {
+                    // shut down since the check above, nothing would ever send it
+                    created.result.completeExceptionally(shutDown());
+                }
+                return created;
+            }
+            coalesced.increment();
+            waiting.latest = update;
+            return waiting;
+        });
+        if (entry.result.isCompletedExceptionally()) {
+            // only a rejected window fails before its flush, callers that joined it are failed with it
+            pending.remove(movieId, entry);
+        }
+        return entry.result;
+    }
+
+    /**
+     * Sends the id's waiting update right away and returns a future that completes once every
+     * update made so far for it has been answered, whatever the outcome.
+     */
+    synchronized CompletableFuture<?> drain(Integer movieId) {
+        Pending waiting = pending.get(movieId);
+        if (waiting != null) {
+            flush(movieId, waiting);
+        }
+        return inFlight.getOrDefault(movieId, DONE);
+    }
+
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Stops the window thread once the updates already held back have been sent. Later updates fail.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private synchronized void flush(Integer movieId, Pending waiting) {
+        // a drain may have sent it already; once removed no update can change it any more
+        if (!pending.remove(movieId, waiting)) {
+            return;
+        }
+        Update latest = waiting.latest;
+        // the send is made on the window thread, or whichever thread finished the one before it
+        CompletableFuture<Movie> sent = inFlight.getOrDefault(movieId, DONE).
+                handle((ignored, ex) -> null).
+                thenCompose(ignored -> Deadline.callWith(latest.deadline, () -> Priority.callWith(latest.priority,
+                        () -> send.apply(movieId, latest.movie).toFuture())));
+        inFlight.put(movieId, sent);
+        sent.whenComplete((movie, ex) -> {
+            inFlight.remove(movieId, sent);
+            if (ex != null) {
+                waiting.result.completeExceptionally(ex);
+            } else {
+                waiting.result.complete(movie);
+            }
+        });
+    }
+
+    private static MovieFailure shutDown() {
+        return new MovieFailure(MovieFailure.Kind.REJECTED, "Update coalescer is shut down");
+    }
+
+    private static CompletableFuture<Movie> failed(Throwable ex) {
+        CompletableFuture<Movie> failed = new CompletableFuture<>();
+        failed.completeExceptionally(ex);
+        return failed;
+    }
+
+    private static final class Pending {
+        private final CompletableFuture<Movie> result = new CompletableFuture<>();
+        private volatile Update latest;
+
+        Pending(Update latest) {
+            this.latest = latest;
+        }
+    }
+
+    private static final class Update {
+        private final Movie movie;
+        private final Deadline deadline;
+        private final Priority priority;
+
+        Update(Movie movie, Deadline deadline, Priority priority) {
+            this.movie = movie;
+            this.deadline = deadline;
+            this.priority = priority;
+        }
+    }
+}
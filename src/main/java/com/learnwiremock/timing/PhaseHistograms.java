@@ -0,0 +1,37 @@
+package com.learnwiremock.timing;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregates the timings of every exchange into one {@link LatencyHistogram} per endpoint and phase.
+ */
+public class PhaseHistograms implements PhaseTimingListener {
+
+    private final ConcurrentHashMap<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void onTimed(String endpoint, RequestTimings timings) {
+        LatencyHistogram[] byPhase = histograms.computeIfAbsent(endpoint, e -> newHistograms());
+        for (RequestPhase phase : RequestPhase.values()) {
+            byPhase[phase.ordinal()].record(timings.get(phase));
+        }
+    }
+
+    public LatencyHistogram histogram(String endpoint, RequestPhase phase) {
+        LatencyHistogram[] byPhase = histograms.get(endpoint);
+        return byPhase != null ? byPhase[phase.ordinal()] : null;
+    }
+
+    public Set<String> getEndpoints() {
+        return histograms.keySet();
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] byPhase = new LatencyHistogram[RequestPhase.values().length];
+        for (int i = 0; i < byPhase.length; i++) {
+            byPhase[i] = new LatencyHistogram();
+        }
+        return byPhase;
+    }
+}
@@ -0,0 +1,196 @@
+package com.learnwiremock.timing;
+
+import io.netty.util.AttributeKey;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.context.Context;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hooks that break an exchange down into {@link RequestPhase}s. The network phases come from
+ * reactor-netty callbacks and the decode phase from a wrapping decoder; both find the exchange's
+ * {@link RequestTimings} in the subscriber context, so exchanges that are not timed pay one context
+ * lookup per hook and marking their connection as used.
+ */
+public final class PhaseTiming {
+
+    private static final AttributeKey<Boolean> USED = AttributeKey.valueOf(PhaseTiming.class.getName() + ".used");
+
+    private PhaseTiming() {
+    }
+
+    /**
+     * A client on the default connection pool with the timing hooks and decoder installed.
+     */
+    public static WebClient webClient(String baseUrl) {
+        return webClient(baseUrl, HttpClient.create());
+    }
+
+    public static WebClient webClient(String baseUrl, HttpClient httpClient) {
+        return WebClient.builder().
+                baseUrl(baseUrl).
+                clientConnector(new ReactorClientHttpConnector(instrument(httpClient))).
+                exchangeStrategies(ExchangeStrategies.builder().
+                        codecs(codecs -> codecs.defaultCodecs().jackson2JsonDecoder(timed(new Jackson2JsonDecoder()))).
+                        build()).
+                build();
+    }
+
+    public static HttpClient instrument(HttpClient httpClient) {
+        return httpClient.
+                doOnRequest((request, connection) -> {
+                    // pooled channels keep their attributes, so only a fresh one lacks the mark; every
+                    // exchange sets it, or a channel first used untimed would look fresh later on
+                    boolean newConnection = connection.channel().attr(USED).setIfAbsent(Boolean.TRUE) == null;
+                    RequestTimings timings = timingsOf(request.currentContext());
+                    if (timings != null) {
+                        timings.connectionAcquired(System.nanoTime(), newConnection);
+                    }
+                }).
+                doAfterRequest((request, connection) -> {
+                    RequestTimings timings = timingsOf(request.currentContext());
+                    if (timings != null) {
+                        timings.requestSent(System.nanoTime());
+                    }
+                }).
+                doOnResponse((response, connection) -> {
+                    RequestTimings timings = timingsOf(response.currentContext());
+                    if (timings != null) {
+                        timings.responseReceived(System.nanoTime());
+                    }
+                }).
+                doAfterResponse((response, connection) -> {
+                    RequestTimings timings = timingsOf(response.currentContext());
+                    if (timings != null) {
+                        timings.bodyRead(System.nanoTime());
+                    }
+                });
+    }
+
+    public static <T> Decoder<T> timed(Decoder<T> decoder) {
+        return new TimedDecoder<>(decoder);
+    }
+
+    /**
+     * Times every subscription to the exchange and hands the timings to {@code whenDone} once it
+     * completes, fails or is cancelled.
+     */
+    public static <T> Flux<T> timed(Flux<T> exchange, Consumer<RequestTimings> whenDone) {
+        return Flux.defer(() -> {
+            RequestTimings timings = new RequestTimings(System.nanoTime());
+            return exchange.
+                    doFinally(signal -> {
+                        timings.finished(System.nanoTime());
+                        whenDone.accept(timings);
+                    }).
+                    subscriberContext(Context.of(RequestTimings.class, timings));
+        });
+    }
+
+    private static RequestTimings timingsOf(Context context) {
+        return context.getOrDefault(RequestTimings.class, null);
+    }
+
+    // a streamed body is decoded synchronously inside its onNext signals, so the time spent passing
+    // them on is the time spent decoding
+    private static Flux<DataBuffer> timedBody(Publisher<DataBuffer> body, RequestTimings timings) {
+        return Flux.from(Operators.<DataBuffer, DataBuffer>lift((scannable, actual) ->
+                new DecodeTimingSubscriber(actual, timings)).apply(body));
+    }
+
+    private static final class TimedDecoder<T> implements Decoder<T> {
+
+        private final Decoder<T> delegate;
+
+        TimedDecoder(Decoder<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+            return delegate.canDecode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<T> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            return Mono.subscriberContext().flatMapMany(context -> {
+                RequestTimings timings = timingsOf(context);
+                return delegate.decode(timings == null ? inputStream : timedBody(inputStream, timings), elementType, mimeType, hints);
+            });
+        }
+
+        @Override
+        public Mono<T> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            return Mono.subscriberContext().flatMap(context -> {
+                RequestTimings timings = timingsOf(context);
+                if (timings == null) {
+                    return delegate.decodeToMono(inputStream, elementType, mimeType, hints);
+                }
+                // the body is joined before it is decoded, so decoding runs from its end to the value
+                return delegate.decodeToMono(Flux.from(inputStream).doOnComplete(() -> timings.bodyRead(System.nanoTime())),
+                        elementType, mimeType, hints).
+                        doOnNext(value -> timings.decodedSinceBodyRead(System.nanoTime()));
+            });
+        }
+
+        @Override
+        public List<MimeType> getDecodableMimeTypes() {
+            return delegate.getDecodableMimeTypes();
+        }
+    }
+
+    private static final class DecodeTimingSubscriber implements CoreSubscriber<DataBuffer> {
+
+        private final CoreSubscriber<? super DataBuffer> actual;
+        private final RequestTimings timings;
+
+        DecodeTimingSubscriber(CoreSubscriber<? super DataBuffer> actual, RequestTimings timings) {
+            this.actual = actual;
+            this.timings = timings;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            actual.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(DataBuffer buffer) {
+            long start = System.nanoTime();
+            actual.onNext(buffer);
+            timings.decoded(System.nanoTime() - start);
+        }
+
+        @Override
+        public void onError(Throwable ex) {
+            actual.onError(ex);
+        }
+
+        @Override
+        public void onComplete() {
+            timings.bodyRead(System.nanoTime());
+            actual.onComplete();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.learnwiremock.timing;
+
+@FunctionalInterface
+public interface PhaseTimingListener {
+
+    /**
+     * Called on the thread that completed the exchange, so implementations should be quick.
+     */
+    void onTimed(String endpoint, RequestTimings timings);
+}
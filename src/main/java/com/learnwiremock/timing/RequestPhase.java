@@ -0,0 +1,12 @@
+package com.learnwiremock.timing;
+
+public enum RequestPhase {
+    /** Waiting for a pooled connection, including opening it when the pool had none to spare. */
+    ACQUIRE,
+    REQUEST_WRITE,
+    TIME_TO_FIRST_BYTE,
+    /** Receiving the body after the response headers, not counting the time spent decoding it. */
+    BODY_READ,
+    DECODE,
+    TOTAL
+}
@@ -0,0 +1,95 @@
+package com.learnwiremock.timing;
+
+/**
+ * Phase timings of one exchange. The hooks installed by {@link PhaseTiming} fill it in from event
+ * loop threads as the exchange goes; listeners get it once the exchange is over.
+ */
+public final class RequestTimings {
+
+    private static final long UNSET = 0;
+
+    private final long startedAt;
+    private volatile long acquiredAt;
+    private volatile long requestSentAt;
+    private volatile long responseAt;
+    private volatile long bodyReadAt;
+    private volatile long finishedAt;
+    private volatile long decodeNanos;
+    private volatile long decodeNanosDuringBody;
+    private volatile boolean newConnection;
+
+    RequestTimings(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Nanoseconds spent in the phase, or -1 when the phase was not observed, for instance because
+     * the exchange failed before it or the client was not instrumented.
+     */
+    public long get(RequestPhase phase) {
+        switch (phase) {
+            case ACQUIRE:
+                return between(startedAt, acquiredAt);
+            case REQUEST_WRITE:
+                return between(acquiredAt, requestSentAt);
+            case TIME_TO_FIRST_BYTE:
+                return between(requestSentAt, responseAt);
+            case BODY_READ:
+                long bodyRead = between(responseAt, bodyReadAt != UNSET ? bodyReadAt : finishedAt);
+                return bodyRead < 0 ? -1 : Math.max(0, bodyRead - decodeNanosDuringBody);
+            case DECODE:
+                return responseAt == UNSET ? -1 : decodeNanos;
+            case TOTAL:
+                return between(startedAt, finishedAt);
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+    }
+
+    /**
+     * Whether the exchange had to open a connection, in which case {@link RequestPhase#ACQUIRE}
+     * includes the TCP connect.
+     */
+    public boolean isNewConnection() {
+        return newConnection;
+    }
+
+    void connectionAcquired(long now, boolean newConnection) {
+        this.newConnection = newConnection;
+        this.acquiredAt = now;
+    }
+
+    void requestSent(long now) {
+        requestSentAt = now;
+    }
+
+    void responseReceived(long now) {
+        responseAt = now;
+    }
+
+    void bodyRead(long now) {
+        if (bodyReadAt == UNSET) {
+            decodeNanosDuringBody = decodeNanos;
+            bodyReadAt = now;
+        }
+    }
+
+    // decoding runs on one thread at a time, so the read-modify-write does not race
+    void decoded(long nanos) {
+        decodeNanos += nanos;
+    }
+
+    void decodedSinceBodyRead(long now) {
+        if (bodyReadAt != UNSET) {
+            decodeNanos += now - bodyReadAt;
+        }
+    }
+
+    void finished(long now) {
+        finishedAt = now;
+    }
+
+    private static long between(long from, long to) {
+        return from == UNSET || to == UNSET ? -1 : to - from;
+    }
+}
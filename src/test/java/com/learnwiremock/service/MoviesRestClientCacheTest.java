@@ -0,0 +1,588 @@
+package com.learnwiremock.service;
+
+import com.github.jenspiegsa.wiremockextension.ConfigureWireMock;
+import com.github.jenspiegsa.wiremockextension.InjectServer;
+import com.github.jenspiegsa.wiremockextension.WireMockExtension;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.learnwiremock.cache.LongConcurrentHashMap;
+import com.learnwiremock.cache.MovieCache;
+import com.learnwiremock.cache.UdpInvalidationBus;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.MovieResult;
+import com.learnwiremock.dto.MovieValue;
+import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.exception.MovieFailure;
+import com.learnwiremock.resilience.Deadline;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+@ExtendWith(WireMockExtension.class)
+public class MoviesRestClientCacheTest {
+
+    MoviesRestClient moviesRestClient;
+    MovieCache movieCache;
+    WebClient webClient;
+
+    @InjectServer
+    WireMockServer wireMockServer;
+
+    @ConfigureWireMock
+    Options options = wireMockConfig().port(8088).
+            notifier(new ConsoleNotifier(true)).
+            extensions(new ResponseTemplateTransformer(true));
+
+    @BeforeEach
+    void setUp(){
+        int port = wireMockServer.port();
+        String baseURL = String.format("http://localhost:%s", port);
+        webClient = WebClient.create(baseURL);
+        movieCache = new MovieCache(Duration.ofMinutes(5));
+        moviesRestClient = new MoviesRestClient(webClient, movieCache);
+    }
+
+    @Test
+    void retrieveMovieById_servedFromCache(){
+//        given
+        Integer movieId = 8;
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json")));
+
+//        when
+        Movie first = moviesRestClient.retrieveMovieById(movieId);
+        first.setName("changed by caller");
+        Movie second = moviesRestClient.retrieveMovieById(movieId);
+
+//        then
+        Assertions.assertEquals("Batman Begins", second.getName());
+        Assertions.assertEquals(8, second.getMovie_id().intValue());
+        verify(exactly(1), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/8")));
+    }
+
+    @Test
+    void deleteMovie_invalidatesCache(){
+//        given
+        Integer movieId = 8;
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json")));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+
+//        when
+        moviesRestClient.retrieveMovieById(movieId);
+        moviesRestClient.deleteMovie(movieId);
+        moviesRestClient.retrieveMovieById(movieId);
+
+//        then
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/8")));
+    }
+
+    @Test
+    void retrieveMovieById_staleWhileRevalidate() throws InterruptedException {
+//        given
+        MovieCache swrCache = new MovieCache(Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ZERO);
+        moviesRestClient = new MoviesRestClient(webClient, swrCache);
+        Integer movieId = 1;
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json")));
+        moviesRestClient.retrieveMovieById(movieId);
+        Thread.sleep(1100);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBody("{\"movie_id\": 1, \"name\": \"Batman Begins (Remastered)\"}")));
+
+//        when
+        Movie stale = moviesRestClient.retrieveMovieById(movieId);
+        Thread.sleep(200);
+        Movie refreshed = moviesRestClient.retrieveMovieById(movieId);
+
+//        then
+        Assertions.assertEquals("Batman Begins", stale.getName());
+        Assertions.assertEquals("Batman Begins (Remastered)", refreshed.getName());
+        Assertions.assertEquals(1, swrCache.getStaleServeCount());
+        Assertions.assertEquals(1, swrCache.getRevalidationCount());
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/1")));
+    }
+
+    @Test
+    void retrieveMovieById_revalidationOutlivesCallersDeadline() throws InterruptedException {
+//        given
+        MovieCache swrCache = new MovieCache(Duration.ofMillis(500), Duration.ofMinutes(1), Duration.ZERO);
+        moviesRestClient = new MoviesRestClient(webClient, swrCache);
+        Integer movieId = 1;
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json")));
+        moviesRestClient.retrieveMovieById(movieId);
+        Thread.sleep(600);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBody("{\"movie_id\": 1, \"name\": \"Batman Begins (Remastered)\"}").
+                        withFixedDelay(300)));
+
+//        when
+        Movie stale = moviesRestClient.retrieveMovieById(movieId, Duration.ofMillis(50));
+        for (int i = 0; i < 100 && !swrCache.movieById(1L).isFresh(); i++) {
+            Thread.sleep(10);
+        }
+
+//        then
+        Assertions.assertEquals("Batman Begins", stale.getName());
+        Assertions.assertEquals("Batman Begins (Remastered)", swrCache.movieById(1L).value().toMovie().getName());
+        Assertions.assertEquals(1, swrCache.getRevalidationCount());
+    }
+
+    @Test
+    void retrieveMovieByYear_staleIfError() throws InterruptedException {
+//        given
+        MovieCache sieCache = new MovieCache(Duration.ofMillis(50), Duration.ZERO, Duration.ofMinutes(1));
+        moviesRestClient = new MoviesRestClient(webClient, sieCache);
+        Integer year = 2012;
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json")));
+        moviesRestClient.retrieveMovieByYear(year);
+        Thread.sleep(100);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .withBody("Service Unavailable")));
+
+//        when
+        List<Movie> movieList = moviesRestClient.retrieveMovieByYear(year);
+
+//        then
+        Assertions.assertEquals(2, movieList.size());
+        Assertions.assertEquals(1, sieCache.getStaleIfErrorServeCount());
+    }
+
+    @Test
+    void retrieveMovieByName_notFoundIsNotMaskedByStaleData() throws InterruptedException {
+//        given
+        MovieCache sieCache = new MovieCache(Duration.ofMillis(50), Duration.ZERO, Duration.ofMinutes(1));
+        moviesRestClient = new MoviesRestClient(webClient, sieCache);
+        String name = "Avengers";
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieName")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("avengers.json")));
+        moviesRestClient.retrieveMovieByName(name);
+        Thread.sleep(100);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieName")).
+                willReturn(WireMock.aResponse().withStatus(HttpStatus.NOT_FOUND.value())));
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieByName(name));
+        Assertions.assertEquals(0, sieCache.getStaleIfErrorServeCount());
+    }
+
+    @Test
+    void retrieveMovieById_notFoundIsCachedNegatively() throws InterruptedException {
+//        given
+        MovieCache negativeCache = new MovieCache(Duration.ofMinutes(5), Duration.ZERO, Duration.ZERO, Duration.ofMillis(500));
+        moviesRestClient = new MoviesRestClient(webClient, negativeCache);
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieid.json")));
+
+//        when
+        List<MovieErrorResponse> failures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            failures.add(Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieById(100)));
+        }
+        MovieResult<Movie> result = moviesRestClient.tryRetrieveMovieById(100);
+        Thread.sleep(600);
+        failures.add(Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieById(100)));
+
+//        then
+        Assertions.assertEquals(MovieFailure.Kind.NOT_FOUND, result.getFailure().getKind());
+        // the first 404 and the negative cache hits fail alike
+        for (MovieErrorResponse failure : failures) {
+            Assertions.assertTrue(failure instanceof MovieFailure);
+            Assertions.assertEquals(MovieFailure.Kind.NOT_FOUND, ((MovieFailure) failure).getKind());
+            Assertions.assertEquals(404, ((MovieFailure) failure).getStatusCode());
+        }
+        Assertions.assertEquals(5, negativeCache.getNegativeHitCount());
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/100")));
+    }
+
+    @Test
+    void addMovie_forgetsNegativelyCachedYear(){
+//        given
+        MovieCache negativeCache = new MovieCache(Duration.ofMinutes(5), Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1));
+        moviesRestClient = new MoviesRestClient(webClient, negativeCache);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieyear.json")));
+        stubFor(post(urlPathEqualTo("/movieservice/v1/movie")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("add-movie.json")));
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieByYear(2019));
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieByYear(2019));
+
+//        when
+        moviesRestClient.addMovie(new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20)));
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieByYear(2019));
+
+//        then
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")));
+    }
+
+    @Test
+    void addMovie_forgetsMissesOfOtherInstances() throws IOException, InterruptedException {
+//        given
+        MovieCache otherCache = new MovieCache(Duration.ofMinutes(5), Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1));
+        MoviesRestClient otherInstance = new MoviesRestClient(webClient, otherCache);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieyear.json")));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieName")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieyear.json")));
+        stubFor(post(urlPathEqualTo("/movieservice/v1/movie")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("add-movie.json")));
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (UdpInvalidationBus bus = UdpInvalidationBus.unicast(loopback, Duration.ofMillis(20));
+             UdpInvalidationBus otherBus = UdpInvalidationBus.unicast(loopback, Duration.ofMillis(20))) {
+            bus.addPeer(otherBus.getLocalAddress());
+            otherBus.addPeer(bus.getLocalAddress());
+            moviesRestClient.setInvalidationBus(bus);
+            otherInstance.setInvalidationBus(otherBus);
+            Assertions.assertThrows(MovieErrorResponse.class, () -> otherInstance.retrieveMovieByYear(2019));
+            Assertions.assertThrows(MovieErrorResponse.class, () -> otherInstance.retrieveMovieByName("Toy"));
+
+//        when
+            moviesRestClient.addMovie(new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20)));
+            for (int i = 0; i < 100 && otherBus.getReceivedCount() < 1; i++) {
+                Thread.sleep(10);
+            }
+
+//        then
+            Assertions.assertNull(otherCache.missingYear(2019));
+            Assertions.assertNull(otherCache.missingName("Toy"));
+            Assertions.assertEquals(1, otherBus.getReceivedCount());
+        }
+    }
+
+    @Test
+    void longConcurrentHashMap_putGetRemove(){
+//        given
+        LongConcurrentHashMap<String> map = new LongConcurrentHashMap<>();
+
+//        when
+        for (long id = 0; id < 10_000; id++) {
+            map.put(id, "movie-" + id);
+        }
+        for (long id = 0; id < 10_000; id += 2) {
+            map.remove(id);
+        }
+
+//        then
+        Assertions.assertEquals(5_000, map.size());
+        Assertions.assertNull(map.get(0));
+        Assertions.assertEquals("movie-9999", map.get(9999));
+        Assertions.assertEquals("movie-1", map.putIfAbsent(1, "other"));
+        Assertions.assertNull(map.get(-1));
+    }
+
+    @Test
+    void retrieveMovieValueById_sharedFromCache(){
+//        given
+        Integer movieId = 8;
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json")));
+
+//        when
+        MovieValue first = moviesRestClient.retrieveMovieValueById(movieId);
+        MovieValue second = moviesRestClient.retrieveMovieValueById(movieId);
+
+//        then
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(8L, second.getMovieId().longValue());
+        Assertions.assertEquals(LocalDate.of(2005, 6, 15), second.getReleaseDate());
+        Assertions.assertEquals(first, MovieValue.from(moviesRestClient.retrieveMovieById(movieId)));
+        verify(exactly(1), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/8")));
+    }
+
+    @Test
+    void movieValue_equalityAndBuilder(){
+//        given
+        MovieValue movie = MovieValue.builder().movieId(1L).name("Batman Begins").
+                cast("Christian Bale, Katie Holmes , Liam Neeson").year(2005).releaseDate(LocalDate.of(2005, 6, 15)).build();
+
+//        when
+        MovieValue renamed = movie.toBuilder().name("The Dark Knight").build();
+        MovieValue roundTripped = MovieValue.from(movie.toMovie());
+
+//        then
+        Assertions.assertEquals(movie, roundTripped);
+        Assertions.assertEquals(movie.hashCode(), roundTripped.hashCode());
+        Assertions.assertNotEquals(movie, renamed);
+        Assertions.assertEquals("Batman Begins", movie.getName());
+    }
+
+    @Test
+    void updateMovie_invalidatesOtherInstances() throws IOException, InterruptedException {
+//        given
+        Integer movieId = 8;
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json")));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json")));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+        MoviesRestClient otherInstance = new MoviesRestClient(webClient, new MovieCache(Duration.ofMinutes(5)));
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (UdpInvalidationBus bus = UdpInvalidationBus.unicast(loopback, Duration.ofMillis(200));
+             UdpInvalidationBus otherBus = UdpInvalidationBus.unicast(loopback, Duration.ofMillis(20))) {
+            bus.addPeer(otherBus.getLocalAddress());
+            otherBus.addPeer(bus.getLocalAddress());
+            moviesRestClient.setInvalidationBus(bus);
+            otherInstance.setInvalidationBus(otherBus);
+
+//        when
+            moviesRestClient.retrieveMovieById(movieId);
+            otherInstance.retrieveMovieById(movieId);
+            moviesRestClient.updateMovie(movieId, new Movie(null, null, "ABC", null, null));
+            moviesRestClient.deleteMovie(9);
+            for (int i = 0; i < 100 && otherBus.getReceivedCount() < 2; i++) {
+                Thread.sleep(10);
+            }
+            otherInstance.retrieveMovieById(movieId);
+
+//        then
+            Assertions.assertEquals(2, bus.getPublishedCount());
+            Assertions.assertEquals(1, bus.getSentDatagramCount());
+            Assertions.assertEquals(2, otherBus.getReceivedCount());
+            Assertions.assertEquals(0, bus.getReceivedCount());
+        }
+        verify(exactly(3), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/8")));
+    }
+
+    @Test
+    void deleteMovie_succeedsAfterInvalidationBusClosed() throws IOException {
+//        given
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+        UdpInvalidationBus bus = UdpInvalidationBus.unicast(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Duration.ofMillis(20));
+        moviesRestClient.setInvalidationBus(bus);
+        bus.close();
+
+//        when
+        String response = moviesRestClient.deleteMovie(9);
+
+//        then
+        Assertions.assertEquals("Movie Deleted Successfully", response);
+        Assertions.assertEquals(0, bus.getPublishedCount());
+    }
+
+    @Test
+    void retrieveMovieById_prefetchedByNameSearch(){
+//        given
+        moviesRestClient.enablePrefetching(2);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieName")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("avengers.json")));
+
+//        when
+        moviesRestClient.retrieveMovieByName("Avengers");
+        Movie movie = moviesRestClient.retrieveMovieById(5);
+
+//        then
+        Assertions.assertEquals("Avengers: Age of Ultron", movie.getName());
+        MoviePrefetcher prefetcher = moviesRestClient.getPrefetcher();
+        Assertions.assertEquals(4, prefetcher.getSeededCount());
+        Assertions.assertEquals(1, prefetcher.getHitCount());
+        Assertions.assertEquals(0.25, prefetcher.getHitRate());
+        verify(exactly(0), getRequestedFor(urlPathMatching("/movieservice/v1/movie/[0-9]+")));
+    }
+
+    @Test
+    void retrieveMovieByYear_neighbouringYearsPrefetched() throws InterruptedException {
+//        given
+        moviesRestClient.enablePrefetching(2);
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json")));
+        MoviePrefetcher prefetcher = moviesRestClient.getPrefetcher();
+
+//        when
+        moviesRestClient.retrieveMovieByYear(2012);
+        for (int i = 0; i < 100 && (movieCache.moviesByYear(2011) == null || movieCache.moviesByYear(2013) == null); i++) {
+            Thread.sleep(10);
+        }
+        List<Movie> movies = moviesRestClient.retrieveMovieByYear(2013);
+        for (int i = 0; i < 100 && movieCache.moviesByYear(2014) == null; i++) {
+            Thread.sleep(10);
+        }
+
+//        then
+        Assertions.assertEquals(2013, movies.get(0).getYear().intValue());
+        Assertions.assertEquals(3, prefetcher.getFetchedCount());
+        Assertions.assertEquals(1, prefetcher.getHitCount());
+        Assertions.assertEquals(1.0 / 3, prefetcher.getHitRate());
+        verify(exactly(1), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")).withQueryParam("year", equalTo("2013")));
+        verify(exactly(4), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")));
+    }
+
+    @Test
+    void retrieveMovieByYear_prefetchOutlivesCallersDeadline() throws InterruptedException {
+//        given
+        moviesRestClient.setBulkWebClient(WebClient.builder().baseUrl(wireMockServer.baseUrl()).defaultHeader("X-Lane", "bulk").build());
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json").
+                        withFixedDelay(600)));
+        moviesRestClient.retrieveMovieByYear(2013);
+        moviesRestClient.enablePrefetching(2);
+
+//        when
+        // served from the cache, so the neighbours are prefetched on the caller's thread, inside its deadline
+        Deadline.within(Duration.ofMillis(200), () -> moviesRestClient.retrieveMovieByYear(2013));
+        for (int i = 0; i < 200 && (movieCache.moviesByYear(2012) == null || movieCache.moviesByYear(2014) == null); i++) {
+            Thread.sleep(10);
+        }
+
+//        then
+        Assertions.assertNotNull(movieCache.moviesByYear(2012));
+        Assertions.assertNotNull(movieCache.moviesByYear(2014));
+        Assertions.assertEquals(2, moviesRestClient.getPrefetcher().getFetchedCount());
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")).withHeader("X-Lane", equalTo("bulk")));
+        verify(exactly(1), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")).withQueryParam("year", equalTo("2013")));
+    }
+
+    @Test
+    void retrieveMovieByNameAndYear_invalidatedByWrites(){
+//        given
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieName")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("avengers.json")));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movieYear")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json")));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json")));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+        moviesRestClient.retrieveMovieByName("Avengers");
+        moviesRestClient.retrieveMovieByYear(2012);
+        moviesRestClient.retrieveMovieByYear(2005);
+
+//        when
+        moviesRestClient.updateMovie(4, new Movie(null, null, "ABC", null, null));
+        moviesRestClient.retrieveMovieByName("Avengers");
+        moviesRestClient.retrieveMovieByYear(2012);
+        moviesRestClient.retrieveMovieByYear(2005);
+        moviesRestClient.deleteMovie(5);
+        moviesRestClient.retrieveMovieByName("Avengers");
+        moviesRestClient.retrieveMovieByYear(2012);
+
+//        then
+        verify(exactly(3), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieName")));
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")).withQueryParam("year", equalTo("2012")));
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movieYear")).withQueryParam("year", equalTo("2005")));
+    }
+
+    @Test
+    void longConcurrentHashMap_forEach(){
+//        given
+        LongConcurrentHashMap<String> map = new LongConcurrentHashMap<>(4);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, "movie " + key);
+        }
+        map.remove(42);
+
+//        when
+        long[] sum = new long[2];
+        map.forEach((value, key) -> {
+            Assertions.assertEquals("movie " + key, value);
+            sum[0] += key;
+            sum[1]++;
+        });
+
+//        then
+        Assertions.assertEquals(99 * 100 / 2 - 42, sum[0]);
+        Assertions.assertEquals(99, sum[1]);
+    }
+}
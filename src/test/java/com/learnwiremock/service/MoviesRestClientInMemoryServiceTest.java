@@ -0,0 +1,125 @@
+package com.learnwiremock.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.MovieField;
+import com.learnwiremock.dto.MovieView;
+import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.stub.InMemoryMovieService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+public class MoviesRestClientInMemoryServiceTest {
+
+    InMemoryMovieService movieService;
+    WireMockServer wireMockServer;
+    MoviesRestClient moviesRestClient;
+
+    @BeforeEach
+    void setUp(){
+        movieService = new InMemoryMovieService();
+        wireMockServer = new WireMockServer(wireMockConfig().dynamicPort().
+                notifier(new ConsoleNotifier(false)).
+                extensions(movieService));
+        wireMockServer.start();
+        wireMockServer.stubFor(InMemoryMovieService.mapping());
+        moviesRestClient = new MoviesRestClient(WebClient.create(wireMockServer.baseUrl()));
+    }
+
+    @AfterEach
+    void tearDown(){
+        wireMockServer.stop();
+    }
+
+    @Test
+    void readsSeeWrites(){
+//        given
+        movieService.seed(10, 7);
+        Movie toyStory = new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20));
+
+//        when
+        Movie added = moviesRestClient.addMovie(toyStory);
+        Movie fetched = moviesRestClient.retrieveMovieById(added.getMovie_id().intValue());
+        moviesRestClient.updateMovie(added.getMovie_id().intValue(), new Movie(null, null, "Annie Potts", null, null));
+        Movie updated = moviesRestClient.retrieveMovieById(added.getMovie_id().intValue());
+        moviesRestClient.deleteMovie(added.getMovie_id().intValue());
+
+//        then
+        Assertions.assertEquals(11, added.getMovie_id().intValue());
+        Assertions.assertEquals("Toys Story 4", fetched.getName());
+        Assertions.assertEquals("Tom Hanks, Tim Allen, Annie Potts", updated.getCast());
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieById(11));
+        Assertions.assertEquals(10, movieService.size());
+    }
+
+    @Test
+    void addMovie_badRequest(){
+//        given
+        movieService.seed(0, 7);
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.addMovie(new Movie(null, null, "Tom Hanks", 2019, null)));
+    }
+
+    @Test
+    void seededMillions(){
+//        given
+        movieService.seed(5_000_000, 42);
+
+//        when
+        Movie movie = moviesRestClient.retrieveMovieById(4_999_999);
+        List<MovieView> firstYear = moviesRestClient.retrieveMovieByYearProjected(1950, EnumSet.of(MovieField.MOVIE_ID));
+
+//        then
+        Assertions.assertTrue(movie.getName().endsWith(" 4999999"));
+        Assertions.assertEquals(movie, moviesRestClient.retrieveMovieById(4_999_999));
+        Assertions.assertEquals(5_000_000 / 75 + 1, firstYear.size());
+        Assertions.assertNull(firstYear.get(0).getName());
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieById(5_000_001));
+    }
+
+    @Test
+    void pagedRetrievalSkipsDeletedAndIncludesAdded(){
+//        given
+        movieService.seed(20, 7);
+        moviesRestClient.deleteMovie(3);
+        moviesRestClient.deleteMovie(15);
+        moviesRestClient.addMovie(new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20)));
+
+//        when
+        List<Long> ids = moviesRestClient.retrieveAllMoviesPaged(4).map(Movie::getMovie_id).collect(Collectors.toList());
+
+//        then
+        Assertions.assertEquals(19, ids.size());
+        Assertions.assertFalse(ids.contains(3L));
+        Assertions.assertFalse(ids.contains(15L));
+        Assertions.assertEquals(21L, ids.get(18).longValue());
+        Assertions.assertEquals(ids.stream().sorted().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void retrieveMovieByName_findsUpdatedName(){
+//        given
+        movieService.seed(1_000, 7);
+        moviesRestClient.updateMovie(500, new Movie(null, "The Grand Budapest Hotel", null, null, null));
+
+//        when
+        List<Movie> movies = moviesRestClient.retrieveMovieByName("Budapest");
+
+//        then
+        Assertions.assertEquals(1, movies.size());
+        Assertions.assertEquals(500L, movies.get(0).getMovie_id().longValue());
+    }
+}
@@ -0,0 +1,114 @@
+package com.learnwiremock.service;
+
+import com.github.jenspiegsa.wiremockextension.ConfigureWireMock;
+import com.github.jenspiegsa.wiremockextension.InjectServer;
+import com.github.jenspiegsa.wiremockextension.WireMockExtension;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.learnwiremock.constants.MoviesAppConstants;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.index.ActorIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.LocalDate;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+@ExtendWith(WireMockExtension.class)
+public class MoviesRestClientIndexTest {
+
+    MoviesRestClient moviesRestClient;
+    ActorIndex actorIndex;
+
+    @InjectServer
+    WireMockServer wireMockServer;
+
+    @ConfigureWireMock
+    Options options = wireMockConfig().port(8088).
+            notifier(new ConsoleNotifier(true)).
+            extensions(new ResponseTemplateTransformer(true));
+
+    @BeforeEach
+    void setUp(){
+        int port = wireMockServer.port();
+        String baseURL = String.format("http://localhost:%s", port);
+        actorIndex = new ActorIndex();
+        moviesRestClient = new MoviesRestClient(WebClient.create(baseURL));
+        moviesRestClient.setActorIndex(actorIndex);
+    }
+
+    @Test
+    void retrieveAllMovies_buildsActorIndex(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies.json")));
+
+//        when
+        moviesRestClient.retrieveAllMovies();
+
+//        then
+        Assertions.assertArrayEquals(new int[]{1, 2, 3}, actorIndex.allOf("Christian Bale"));
+        Assertions.assertArrayEquals(new int[]{2, 3}, actorIndex.allOf("christian  bale", "HEATH LEDGER"));
+        Assertions.assertArrayEquals(new int[]{1, 8, 9}, actorIndex.anyOf("Liam Neeson", "Ed Helms", "Keira Knightley"));
+        Assertions.assertEquals(0, actorIndex.allOf("Liam Neeson", "Heath Ledger").length);
+    }
+
+    @Test
+    void updateAndDeleteMovie_reindexActors(){
+//        given
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBody("{\"movie_id\": 1, \"name\": \"Batman Begins\", \"year\": 2005, " +
+                                "\"cast\": \"Christian Bale, Michael Caine\", \"release_date\": \"2005-06-15\"}")));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+        actorIndex.add(1L, "Christian Bale, Katie Holmes , Liam Neeson");
+        actorIndex.add(2L, "Christian Bale, Heath Ledger , Michael Caine");
+
+//        when
+        moviesRestClient.updateMovie(1, new Movie(null, null, "Michael Caine", null, LocalDate.of(2005, 6, 15)));
+        int[] afterUpdate = actorIndex.allOf("Michael Caine");
+        moviesRestClient.deleteMovie(2);
+
+//        then
+        Assertions.assertArrayEquals(new int[]{1, 2}, afterUpdate);
+        Assertions.assertEquals(0, actorIndex.anyOf("Liam Neeson", "Katie Holmes").length);
+        Assertions.assertArrayEquals(new int[]{1}, actorIndex.anyOf("Michael Caine", "Heath Ledger"));
+        Assertions.assertEquals(1, actorIndex.movieCount());
+    }
+
+    @Test
+    void actorIndex_intersectsSkewedPostings(){
+//        given
+        for (long id = 0; id < 1000; id++) {
+            actorIndex.add(id, id % 100 == 7 ? "Extra, Star" : "Extra");
+        }
+
+//        when
+        int[] both = actorIndex.allOf("Star", "Extra");
+
+//        then
+        Assertions.assertEquals(10, both.length);
+        Assertions.assertEquals(7, both[0]);
+        Assertions.assertEquals(907, both[9]);
+        Assertions.assertEquals(1000, actorIndex.anyOf("Extra", "Star").length);
+    }
+}
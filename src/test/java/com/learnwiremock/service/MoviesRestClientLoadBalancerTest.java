@@ -0,0 +1,174 @@
+package com.learnwiremock.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.resilience.MoviesLoadBalancer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+public class MoviesRestClientLoadBalancerTest {
+
+    WireMockServer replicaOne;
+    WireMockServer replicaTwo;
+    MoviesLoadBalancer loadBalancer;
+    MoviesRestClient moviesRestClient;
+
+    @BeforeEach
+    void setUp(){
+        replicaOne = new WireMockServer(wireMockConfig().dynamicPort().notifier(new ConsoleNotifier(false)));
+        replicaTwo = new WireMockServer(wireMockConfig().dynamicPort().notifier(new ConsoleNotifier(false)));
+        replicaOne.start();
+        replicaTwo.start();
+        loadBalancer = new MoviesLoadBalancer(Arrays.asList(replicaOne.baseUrl(), replicaTwo.baseUrl()),
+                WebClient::create, Duration.ofMillis(500), 3, Duration.ofMinutes(1));
+        moviesRestClient = new MoviesRestClient(loadBalancer);
+    }
+
+    @AfterEach
+    void tearDown(){
+        replicaOne.stop();
+        replicaTwo.stop();
+    }
+
+    @Test
+    void retrieveMovieById_spreadsAcrossReplicas(){
+//        given
+        stubMovie(replicaOne, WireMock.aResponse());
+        stubMovie(replicaTwo, WireMock.aResponse());
+
+//        when
+        for (int i = 0; i < 40; i++) {
+            Movie movie = moviesRestClient.retrieveMovieById(1);
+            Assertions.assertEquals("Batman Begins", movie.getName());
+        }
+
+//        then
+        Assertions.assertTrue(requestsTo(replicaOne) > 0);
+        Assertions.assertTrue(requestsTo(replicaTwo) > 0);
+        Assertions.assertEquals(40, requestsTo(replicaOne) + requestsTo(replicaTwo));
+    }
+
+    @Test
+    void retrieveMovieById_ejectsFailingReplica(){
+//        given
+        stubMovie(replicaOne, WireMock.aResponse());
+        replicaTwo.stubFor(get(anyUrl()).willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+
+//        when
+        int failures = 0;
+        for (int i = 0; i < 40; i++) {
+            try {
+                moviesRestClient.retrieveMovieById(1);
+            } catch (MovieErrorResponse ex) {
+                failures++;
+            }
+        }
+
+//        then
+        Assertions.assertEquals(3, failures);
+        Assertions.assertEquals(3, requestsTo(replicaTwo));
+        Assertions.assertTrue(loadBalancer.getBackends().get(1).isEjected());
+        Assertions.assertFalse(loadBalancer.getBackends().get(0).isEjected());
+    }
+
+    @Test
+    void retrieveMovieById_ejectsSlowReplica(){
+//        given
+        stubMovie(replicaOne, WireMock.aResponse());
+        stubMovie(replicaTwo, WireMock.aResponse().withFixedDelay(700));
+
+//        when
+        for (int i = 0; i < 30; i++) {
+            moviesRestClient.retrieveMovieById(1);
+        }
+
+//        then
+        Assertions.assertEquals(3, requestsTo(replicaTwo));
+        Assertions.assertEquals(1, loadBalancer.getBackends().get(1).getEjectionCount());
+    }
+
+    @Test
+    void retrieveMovieById_ejectsHangingReplica(){
+//        given
+        stubMovie(replicaOne, WireMock.aResponse());
+        stubMovie(replicaTwo, WireMock.aResponse().withFixedDelay(5000));
+
+//        when
+        int timeouts = 0;
+        for (int i = 0; i < 30; i++) {
+            try {
+                moviesRestClient.retrieveMovieById(1, Duration.ofMillis(700));
+            } catch (MovieErrorResponse ex) {
+                timeouts++;
+            }
+        }
+
+//        then
+        Assertions.assertEquals(3, timeouts);
+        Assertions.assertEquals(3, requestsTo(replicaTwo));
+        Assertions.assertTrue(loadBalancer.getBackends().get(1).isEjected());
+        Assertions.assertEquals(0, loadBalancer.getBackends().get(1).getOutstanding());
+    }
+
+    @Test
+    void retrieveAllMovies_bulkPoolsAreBalanced(){
+//        given
+        loadBalancer = new MoviesLoadBalancer(Arrays.asList(replicaOne.baseUrl(), replicaTwo.baseUrl()), WebClient::create,
+                baseUrl -> WebClient.builder().baseUrl(baseUrl).defaultHeader("X-Pool", "bulk").build(),
+                Duration.ofMillis(500), 3, Duration.ofMinutes(1));
+        moviesRestClient = new MoviesRestClient(loadBalancer);
+        stubMovie(replicaOne, WireMock.aResponse());
+        stubMovie(replicaTwo, WireMock.aResponse());
+        for (WireMockServer replica : Arrays.asList(replicaOne, replicaTwo)) {
+            replica.stubFor(get(urlPathEqualTo("/movieservice/v1/allMovies")).
+                    willReturn(WireMock.aResponse().
+                            withStatus(HttpStatus.OK.value()).
+                            withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                            withBodyFile("all-movies.json")));
+        }
+
+//        when
+        for (int i = 0; i < 20; i++) {
+            moviesRestClient.retrieveAllMovies();
+        }
+        moviesRestClient.retrieveMovieById(1);
+
+//        then
+        Assertions.assertTrue(bulkRequestsTo(replicaOne) > 0);
+        Assertions.assertTrue(bulkRequestsTo(replicaTwo) > 0);
+        Assertions.assertEquals(20, bulkRequestsTo(replicaOne) + bulkRequestsTo(replicaTwo));
+        Assertions.assertEquals(21, requestsTo(replicaOne) + requestsTo(replicaTwo));
+    }
+
+    private static void stubMovie(WireMockServer replica, ResponseDefinitionBuilder response){
+        replica.stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(response.
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json")));
+    }
+
+    private static int bulkRequestsTo(WireMockServer replica){
+        return replica.countRequestsMatching(getRequestedFor(anyUrl()).withHeader("X-Pool", equalTo("bulk")).build()).getCount();
+    }
+
+    private static int requestsTo(WireMockServer replica){
+        return replica.countRequestsMatching(getRequestedFor(anyUrl()).build()).getCount();
+    }
+}
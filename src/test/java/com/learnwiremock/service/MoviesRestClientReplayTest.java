@@ -0,0 +1,93 @@
+package com.learnwiremock.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.stub.InMemoryMovieService;
+import com.learnwiremock.stub.ReplayReport;
+import com.learnwiremock.stub.TrafficRecording;
+import com.learnwiremock.stub.TrafficReplayer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+public class MoviesRestClientReplayTest {
+
+    InMemoryMovieService movieService;
+    WireMockServer serviceServer;
+    WireMockServer recordingProxy;
+    WireMockServer replayServer;
+
+    @BeforeEach
+    void setUp(){
+        movieService = new InMemoryMovieService();
+        serviceServer = new WireMockServer(wireMockConfig().dynamicPort().
+                notifier(new ConsoleNotifier(false)).
+                extensions(movieService));
+        serviceServer.start();
+        serviceServer.stubFor(InMemoryMovieService.mapping());
+        movieService.seed(100, 7);
+        // stands in for the selective proxy in front of a real service
+        recordingProxy = new WireMockServer(wireMockConfig().dynamicPort().notifier(new ConsoleNotifier(false)));
+        recordingProxy.start();
+        recordingProxy.stubFor(any(anyUrl()).willReturn(aResponse().proxiedFrom(serviceServer.baseUrl())));
+        replayServer = new WireMockServer(wireMockConfig().dynamicPort().notifier(new ConsoleNotifier(false)));
+        replayServer.start();
+    }
+
+    @AfterEach
+    void tearDown(){
+        serviceServer.stop();
+        recordingProxy.stop();
+        replayServer.stop();
+    }
+
+    @Test
+    void recordedTrafficReplayed(@TempDir Path fixtures) throws IOException, InterruptedException {
+//        given
+        MoviesRestClient recorded = new MoviesRestClient(WebClient.create(recordingProxy.baseUrl()));
+        Movie first = recorded.retrieveMovieById(1);
+        recorded.retrieveMovieByName(first.getName());
+        Thread.sleep(50);
+        recorded.retrieveMovieByYear(first.getYear());
+        Movie added = recorded.addMovie(new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20)));
+        Thread.sleep(50);
+        recorded.updateMovie(added.getMovie_id().intValue(), new Movie(null, null, "Annie Potts", null, null));
+        recorded.deleteMovie(added.getMovie_id().intValue());
+        Assertions.assertThrows(MovieErrorResponse.class, () -> recorded.retrieveMovieById(1000));
+        Path fixture = fixtures.resolve("traffic.rec");
+        TrafficRecording.capture(recordingProxy.getAllServeEvents()).writeTo(fixture);
+        TrafficRecording recording = TrafficRecording.readFrom(fixture);
+        recording.stubs(2.0).forEach(replayServer::stubFor);
+
+//        when
+        ReplayReport report = new TrafficReplayer(new MoviesRestClient(WebClient.create(replayServer.baseUrl())), 4).
+                replay(recording, 2.0);
+
+//        then
+        Assertions.assertEquals(7, recording.getExchanges().size());
+        Assertions.assertEquals("POST", recording.getExchanges().get(3).getMethod());
+        Assertions.assertEquals(404, recording.getExchanges().get(6).getStatus());
+        Assertions.assertTrue(recording.getDurationMillis() >= 100);
+        Assertions.assertEquals(6, report.getCompleted());
+        Assertions.assertEquals(1, report.getFailed());
+        Assertions.assertEquals(0, report.getSkipped());
+        Assertions.assertEquals(7, report.getLatencies().getCount());
+        Assertions.assertTrue(report.getElapsed().toMillis() >= recording.getDurationMillis() / 2);
+        replayServer.verify(7, anyRequestedFor(anyUrl()));
+    }
+}
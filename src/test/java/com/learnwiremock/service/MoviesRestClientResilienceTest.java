@@ -0,0 +1,421 @@
+package com.learnwiremock.service;
+
+import com.github.jenspiegsa.wiremockextension.ConfigureWireMock;
+import com.github.jenspiegsa.wiremockextension.InjectServer;
+import com.github.jenspiegsa.wiremockextension.WireMockExtension;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.learnwiremock.constants.MoviesAppConstants;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.exception.MovieFailure;
+import com.learnwiremock.resilience.AdaptiveConcurrencyLimiter;
+import com.learnwiremock.resilience.Deadline;
+import com.learnwiremock.resilience.Lane;
+import com.learnwiremock.resilience.Priority;
+import com.learnwiremock.resilience.TokenBucketRateLimiter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+@ExtendWith(WireMockExtension.class)
+public class MoviesRestClientResilienceTest {
+
+    MoviesRestClient moviesRestClient;
+    WebClient webClient;
+
+    @InjectServer
+    WireMockServer wireMockServer;
+
+    @ConfigureWireMock
+    Options options = wireMockConfig().port(8088).
+            notifier(new ConsoleNotifier(true)).
+            extensions(new ResponseTemplateTransformer(true));
+
+    @BeforeEach
+    void setUp(){
+        int port = wireMockServer.port();
+        String baseURL = String.format("http://localhost:%s", port);
+        webClient = WebClient.create(baseURL);
+        moviesRestClient = new MoviesRestClient(webClient);
+    }
+
+    @Test
+    void retrieveMovieById_concurrencyLimitRejectsExcess() throws InterruptedException {
+//        given
+        moviesRestClient.setConcurrencyLimiterFactory(() -> new AdaptiveConcurrencyLimiter(2, 1, 2, Duration.ZERO));
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json").
+                        withFixedDelay(1000)));
+
+//        when
+        List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            Integer movieId = i;
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    moviesRestClient.retrieveMovieById(movieId);
+                    return true;
+                } catch (MovieFailure ex) {
+                    Assertions.assertEquals(MovieFailure.Kind.REJECTED, ex.getKind());
+                    return false;
+                }
+            }));
+            Thread.sleep(50);
+        }
+        long succeeded = calls.stream().filter(CompletableFuture::join).count();
+
+//        then
+        AdaptiveConcurrencyLimiter limiter = moviesRestClient.getConcurrencyLimiter(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1);
+        Assertions.assertEquals(2, succeeded);
+        Assertions.assertEquals(2, limiter.getRejectedCount());
+        Assertions.assertEquals(0, limiter.getInFlight());
+        verify(exactly(2), getRequestedFor(urlPathMatching("/movieservice/v1/movie/[0-9]+")));
+    }
+
+    @Test
+    void retrieveAllMovies_limitShrinksWhenServiceFails(){
+//        given
+        moviesRestClient.setConcurrencyLimiterFactory(() -> new AdaptiveConcurrencyLimiter(10, 1, 20, Duration.ZERO));
+        stubFor(get(anyUrl()).willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+
+//        when
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveAllMovies());
+        }
+
+//        then
+        AdaptiveConcurrencyLimiter limiter = moviesRestClient.getConcurrencyLimiter(MoviesAppConstants.GET_ALL_MOVIES_V1);
+        Assertions.assertTrue(limiter.getLimit() < 10);
+    }
+
+    @Test
+    void retrieveMovieById_limitShrinksWhenCallersGiveUp(){
+//        given
+        moviesRestClient.setConcurrencyLimiterFactory(() -> new AdaptiveConcurrencyLimiter(10, 1, 20, Duration.ZERO));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json")));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/2")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json").
+                        withFixedDelay(1000)));
+        for (int i = 0; i < 5; i++) {
+            moviesRestClient.retrieveMovieById(1);
+        }
+
+//        when
+        for (int i = 0; i < 6; i++) {
+            Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieById(2, Duration.ofMillis(150)));
+        }
+
+//        then
+        AdaptiveConcurrencyLimiter limiter = moviesRestClient.getConcurrencyLimiter(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1);
+        Assertions.assertTrue(limiter.getLimit() <= 6, "limit " + limiter.getLimit());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void adaptiveConcurrencyLimiter_queuesUntilSlotFrees() throws ExecutionException, InterruptedException {
+//        given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(2));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+
+//        when
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = limiter.acquire().toFuture();
+        Thread.sleep(100);
+        boolean doneBeforeRelease = queued.isDone();
+        first.onSuccess();
+
+//        then
+        Assertions.assertFalse(doneBeforeRelease);
+        Assertions.assertNotNull(queued.get());
+        Assertions.assertNull(limiter.tryAcquire());
+        Assertions.assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void adaptiveConcurrencyLimiter_interactiveWaitersGoFirst() throws ExecutionException, InterruptedException {
+//        given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(2));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> bulk = limiter.acquire(Priority.BULK).toFuture();
+
+//        when
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> interactive = limiter.acquire(Priority.INTERACTIVE).toFuture();
+        first.onSuccess();
+        AdaptiveConcurrencyLimiter.Permit interactivePermit = interactive.get();
+        boolean bulkGrantedWithInteractive = bulk.isDone();
+        interactivePermit.onSuccess();
+
+//        then
+        Assertions.assertFalse(bulkGrantedWithInteractive);
+        Assertions.assertNotNull(bulk.get());
+        Assertions.assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void adaptiveConcurrencyLimiter_queueWaitExpires() throws ExecutionException, InterruptedException {
+//        given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, Duration.ofMillis(100));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+
+//        when
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = limiter.acquire().toFuture();
+        AdaptiveConcurrencyLimiter.Permit expired = queued.get();
+        first.onSuccess();
+
+//        then
+        Assertions.assertNull(expired);
+        Assertions.assertEquals(1, limiter.getRejectedCount());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void retrieveAllMoviesPaged_queuesOnSingleThreadLane(){
+//        given
+        Lane lane = new Lane("single", String.format("http://localhost:%s", wireMockServer.port()), 4, 1);
+        moviesRestClient = new MoviesRestClient(lane.webClient());
+        moviesRestClient.setConcurrencyLimiterFactory(() -> new AdaptiveConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(5)));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).atPriority(10).
+                willReturn(okJson("[]")));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", matching("[0-5]")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies-page-template.json").
+                        withFixedDelay(50)));
+
+//        when
+        // pages after the first two are subscribed from the lane's only event loop thread
+        long start = System.nanoTime();
+        long count = moviesRestClient.retrieveAllMoviesPaged(2, 2, 0).count();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        lane.close();
+
+//        then
+        Assertions.assertEquals(12, count);
+        Assertions.assertTrue(elapsedMillis < 2000, "paging took " + elapsedMillis + " ms");
+        Assertions.assertEquals(0, moviesRestClient.getConcurrencyLimiter(MoviesAppConstants.GET_ALL_MOVIES_V1).getRejectedCount());
+    }
+
+    @Test
+    void retrieveMovieById_honoursRetryAfterOn429(){
+//        given
+        moviesRestClient.setRateLimiter(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1, new TokenBucketRateLimiter(100, 10));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).inScenario("quota").
+                whenScenarioStateIs(Scenario.STARTED).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.TOO_MANY_REQUESTS.value()).
+                        withHeader(HttpHeaders.RETRY_AFTER, "1")).
+                willSetStateTo("quota restored"));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).inScenario("quota").
+                whenScenarioStateIs("quota restored").
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json")));
+
+//        when
+        long start = System.nanoTime();
+        Movie movie = moviesRestClient.retrieveMovieById(1);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertEquals("Batman Begins", movie.getName());
+        Assertions.assertTrue(elapsedMillis >= 900, "waited " + elapsedMillis + " ms");
+        Assertions.assertEquals(1, moviesRestClient.getRateLimiter(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1).getThrottledCount());
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/1")));
+    }
+
+    @Test
+    void retrieveMovieById_givesUpAfterMaxRetriesOn429(){
+//        given
+        moviesRestClient.setRateLimiter(MoviesAppConstants.MOVIE_BY_ID_PATH_PARAM_V1,
+                new TokenBucketRateLimiter(100, 10, Duration.ofSeconds(5), 1));
+        stubFor(get(urlPathEqualTo("/movieservice/v1/movie/1")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.TOO_MANY_REQUESTS.value()).
+                        withHeader(HttpHeaders.RETRY_AFTER, "0")));
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieById(1));
+        verify(exactly(2), getRequestedFor(urlPathEqualTo("/movieservice/v1/movie/1")));
+    }
+
+    @Test
+    void addMovie_burstIsSmoothedToConfiguredRate(){
+//        given
+        moviesRestClient.setRateLimiter(MoviesAppConstants.ADD_MOVIE_V1, new TokenBucketRateLimiter(10, 1));
+        stubFor(post(urlPathEqualTo(MoviesAppConstants.ADD_MOVIE_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("add-movie.json")));
+        Movie movie = new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20));
+
+//        when
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            moviesRestClient.addMovie(movie);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertTrue(elapsedMillis >= 450, "took " + elapsedMillis + " ms");
+        Assertions.assertTrue(moviesRestClient.getRateLimiter(MoviesAppConstants.ADD_MOVIE_V1).getDelayedCount() > 0);
+    }
+
+    @Test
+    void retrieveMovieById_perCallTimeout(){
+//        given
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json").
+                        withFixedDelay(3000)));
+
+//        when
+        long start = System.nanoTime();
+        MovieErrorResponse movieErrorResponse = Assertions.assertThrows(MovieErrorResponse.class,
+                () -> moviesRestClient.retrieveMovieById(1, Duration.ofMillis(200)));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertTrue(elapsedMillis < 1000, "took " + elapsedMillis + " ms");
+        Assertions.assertTrue(movieErrorResponse.getMessage().startsWith("Deadline of"));
+        Assertions.assertEquals(MovieFailure.Kind.REJECTED, ((MovieFailure) movieErrorResponse).getKind());
+        Assertions.assertEquals(0, movieErrorResponse.getStackTrace().length);
+    }
+
+    @Test
+    void retrieveAllMovies_deadlineFromContextSpansCalls(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies.json").
+                        withFixedDelay(300)));
+
+//        when
+        long start = System.nanoTime();
+        Assertions.assertThrows(MovieErrorResponse.class, () -> Deadline.within(Duration.ofMillis(500), () -> {
+            moviesRestClient.retrieveAllMovies();
+            return moviesRestClient.retrieveAllMovies(Duration.ofSeconds(10));
+        }));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertTrue(elapsedMillis < 1000, "took " + elapsedMillis + " ms");
+        Assertions.assertNull(Deadline.current());
+    }
+
+    @Test
+    void retrieveAllMovies_expiredDeadlineSkipsRequest(){
+//        given
+        stubFor(get(anyUrl()).willReturn(ok()));
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveAllMovies(Duration.ZERO));
+        verify(exactly(0), getRequestedFor(anyUrl()));
+    }
+
+    @Test
+    void retrieveAllMoviesPaged_retriesStopAtDeadline(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.SERVICE_UNAVAILABLE.value()).
+                        withFixedDelay(150)));
+
+//        when
+        long start = System.nanoTime();
+        MovieErrorResponse movieErrorResponse = Assertions.assertThrows(MovieErrorResponse.class,
+                () -> Deadline.within(Duration.ofMillis(400), () -> moviesRestClient.retrieveAllMoviesPaged(10, 1, 10).count()));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertTrue(elapsedMillis < 800, "took " + elapsedMillis + " ms");
+        Assertions.assertTrue(movieErrorResponse.getMessage().contains("Deadline of 400 ms exceeded"));
+        // cancelled requests of earlier tests can still be logged, so only this test's page is counted
+        Assertions.assertTrue(wireMockServer.countRequestsMatching(getRequestedFor(
+                urlEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1 + "?page=0&size=10")).build()).getCount() <= 3);
+    }
+
+    @Test
+    void retrieveMovieById_notQueuedBehindBulkLane() throws InterruptedException {
+//        given
+        Lane bulkLane = new Lane("bulk", String.format("http://localhost:%s", wireMockServer.port()), 1, 1);
+        moviesRestClient.setBulkWebClient(bulkLane.webClient());
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies.json").
+                        withFixedDelay(600)));
+        stubFor(post(urlPathEqualTo(MoviesAppConstants.ADD_MOVIE_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("add-movie.json").
+                        withFixedDelay(600)));
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie.json")));
+        Movie movie = new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20));
+
+//        when
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> bulkCalls = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            bulkCalls.add(CompletableFuture.supplyAsync(() -> moviesRestClient.retrieveAllMovies()));
+            bulkCalls.add(CompletableFuture.supplyAsync(() -> Priority.BULK.call(() -> moviesRestClient.addMovie(movie))));
+        }
+        Thread.sleep(100);
+        long interactiveStart = System.nanoTime();
+        Movie interactive = moviesRestClient.retrieveMovieById(1);
+        long interactiveMillis = (System.nanoTime() - interactiveStart) / 1_000_000;
+        bulkCalls.forEach(CompletableFuture::join);
+        long bulkMillis = (System.nanoTime() - start) / 1_000_000;
+        bulkLane.close();
+
+//        then
+        Assertions.assertEquals("Batman Begins", interactive.getName());
+        Assertions.assertTrue(interactiveMillis < 400, "interactive call took " + interactiveMillis + " ms");
+        // the bulk lane has a single connection, so its four calls ran one after another
+        Assertions.assertTrue(bulkMillis >= 2400, "bulk calls took " + bulkMillis + " ms");
+        Assertions.assertNull(Priority.current());
+    }
+}
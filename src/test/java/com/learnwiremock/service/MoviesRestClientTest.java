@@ -1,5 +1,6 @@
 package com.learnwiremock.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.jenspiegsa.wiremockextension.ConfigureWireMock;
 import com.github.jenspiegsa.wiremockextension.InjectServer;
 import com.github.jenspiegsa.wiremockextension.WireMockExtension;
@@ -8,20 +9,57 @@ import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
 import com.github.tomakehurst.wiremock.core.Options;
 import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.learnwiremock.cache.MovieCache;
+import com.learnwiremock.codec.MovieJsonEncoder;
 import com.learnwiremock.constants.MoviesAppConstants;
 import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.MovieField;
+import com.learnwiremock.dto.MovieResult;
+import com.learnwiremock.dto.MovieView;
 import com.learnwiremock.exception.MovieErrorResponse;
+import com.learnwiremock.exception.MovieFailure;
+import com.learnwiremock.resilience.Deadline;
+import com.learnwiremock.resilience.Priority;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
-
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
@@ -431,4 +469,635 @@ public class MoviesRestClientTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void retrieveAllMoviesRaw() throws Exception {
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies.json")));
+        byte[] expected = Files.readAllBytes(Paths.get("src/test/resources/__files/all-movies.json"));
+
+//        when
+        ByteArrayOutputStream relayed = new ByteArrayOutputStream();
+        long written = moviesRestClient.retrieveAllMoviesRaw(relayed);
+
+//        then
+        Assertions.assertEquals(expected.length, written);
+        Assertions.assertArrayEquals(expected, relayed.toByteArray());
+    }
+
+    @Test
+    void retrieveAllMoviesRaw_targetClosedMidRelay(){
+//        given
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 1; i <= 5000; i++) {
+            body.append(i == 1 ? "" : ",").append("{\"movie_id\":").append(i).
+                    append(",\"name\":\"Movie ").append(i).append("\",\"cast\":\"Tom Hanks, Tim Allen\",\"year\":2019}");
+        }
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBody(body.append("]").toString())));
+        // relayed as unpooled copies, a released pooled buffer could be handed out again before it is checked
+        NettyDataBufferFactory unpooled = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+        List<DataBuffer> received = Collections.synchronizedList(new ArrayList<>());
+        moviesRestClient = new MoviesRestClient(webClient.mutate().
+                filter((request, next) -> next.exchange(request).map(response -> ClientResponse.from(response).
+                        body(response.bodyToFlux(DataBuffer.class).map(buffer -> {
+                            DataBuffer copy = unpooled.allocateBuffer(buffer.readableByteCount()).write(buffer);
+                            DataBufferUtils.release(buffer);
+                            received.add(copy);
+                            return copy;
+                        })).build())).
+                build());
+        WritableByteChannel closesAfterFirstWrite = new WritableByteChannel() {
+            boolean open = true;
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (!open) {
+                    throw new ClosedChannelException();
+                }
+                open = false;
+                int written = src.remaining();
+                src.position(src.limit());
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+
+//        when
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveAllMoviesRaw(closesAfterFirstWrite));
+
+//        then
+        Assertions.assertTrue(received.size() >= 2);
+        synchronized (received) {
+            for (DataBuffer buffer : received) {
+                Assertions.assertFalse(((PooledDataBuffer) buffer).isAllocated());
+            }
+        }
+    }
+
+    @Test
+    void retrieveMovieByYearRaw_responseTemplating(){
+//        given
+        Integer year = 2012;
+        stubFor(get(urlEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1+"?year="+year)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json")));
+
+//        when
+        ByteArrayOutputStream relayed = new ByteArrayOutputStream();
+        moviesRestClient.retrieveMovieByYearRaw(year, relayed);
+
+//        then
+        String body = new String(relayed.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(body.contains("\"year\": \"2012\""));
+        Assertions.assertTrue(body.contains("The Dark Knight Rises"));
+    }
+
+    @Test
+    void retrieveMovieByYearRaw_notFound(){
+//        given
+        Integer year = 1950;
+        stubFor(get(urlEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1+"?year="+year)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieyear.json")));
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMovieByYearRaw(year, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void retrieveAllMoviesPaged(){
+//        given
+        stubAllMoviesPages();
+
+//        when
+        List<Movie> movies = moviesRestClient.retrieveAllMoviesPaged(2).collect(Collectors.toList());
+
+//        then
+        Assertions.assertEquals(6, movies.size());
+        Assertions.assertEquals("Page 0 Movie 1", movies.get(0).getName());
+        Assertions.assertEquals("Page 1 Movie 2", movies.get(3).getName());
+        Assertions.assertEquals("Page 2 Movie 2", movies.get(5).getName());
+        verify(getRequestedFor(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("size", equalTo("2")));
+    }
+
+    @Test
+    void retrieveAllMoviesPaged_retriesFailedPage(){
+//        given
+        stubAllMoviesPages();
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", equalTo("1")).
+                inScenario("page 1").
+                whenScenarioStateIs(Scenario.STARTED).
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())).
+                willSetStateTo("recovered"));
+
+//        when
+        List<Movie> movies = moviesRestClient.retrieveAllMoviesPaged(2).collect(Collectors.toList());
+
+//        then
+        Assertions.assertEquals(6, movies.size());
+        Assertions.assertEquals("Page 1 Movie 1", movies.get(2).getName());
+        verify(exactly(2), getRequestedFor(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", equalTo("1")));
+    }
+
+    @Test
+    void retrieveAllMoviesPaged_backsOffBetweenRetries(){
+//        given
+        stubAllMoviesPages();
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", equalTo("0")).
+                inScenario("page 0").
+                whenScenarioStateIs(Scenario.STARTED).
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())).
+                willSetStateTo("failed once"));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", equalTo("0")).
+                inScenario("page 0").
+                whenScenarioStateIs("failed once").
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())).
+                willSetStateTo("recovered"));
+
+//        when
+        long start = System.nanoTime();
+        List<Movie> movies = moviesRestClient.retrieveAllMoviesPaged(2, 1, 3).collect(Collectors.toList());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertEquals(6, movies.size());
+        // at least half of the 50 and 100 ms backoffs
+        Assertions.assertTrue(elapsedMillis >= 75, "took " + elapsedMillis + " ms");
+        verify(exactly(3), getRequestedFor(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", equalTo("0")));
+    }
+
+    @Test
+    void retrieveAllMoviesPaged_invalidArguments(){
+//        when
+//        then
+        Assertions.assertThrows(IllegalArgumentException.class, () -> moviesRestClient.retrieveAllMoviesPaged(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> moviesRestClient.retrieveAllMoviesPaged(2, 0, 3));
+        IllegalArgumentException negativeRetries = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> moviesRestClient.retrieveAllMoviesPaged(2, 4, -1));
+        Assertions.assertEquals("pageRetries must not be negative but was -1", negativeRetries.getMessage());
+        verify(exactly(0), getRequestedFor(anyUrl()));
+    }
+
+    @Test
+    void retrieveAllMoviesPaged_badRequest(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().withStatus(HttpStatus.BAD_REQUEST.value())));
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveAllMoviesPaged(2).count());
+    }
+
+    private void stubAllMoviesPages(){
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).atPriority(10).
+                willReturn(okJson("[]")));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("page", matching("[0-2]")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies-page-template.json")));
+    }
+
+    @Test
+    void retrieveMoviesByYearRange(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json").
+                        withFixedDelay(300)));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).withQueryParam("year", equalTo("2012")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieyear.json")));
+
+//        when
+        long start = System.nanoTime();
+        List<Movie> movies = moviesRestClient.retrieveMoviesByYearRange(2010, 2014, 5).collect(Collectors.toList());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertEquals(8, movies.size());
+        Assertions.assertEquals(Arrays.asList(2010, 2010, 2011, 2011, 2013, 2013, 2014, 2014),
+                movies.stream().map(Movie::getYear).collect(Collectors.toList()));
+        Assertions.assertTrue(elapsedMillis < 1200, "took " + elapsedMillis + " ms");
+        verify(exactly(5), getRequestedFor(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)));
+    }
+
+    @Test
+    void retrieveMoviesByYearRange_serverError(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.retrieveMoviesByYearRange(2010, 2012).count());
+    }
+
+    @Test
+    void retrieveAllMoviesProjected(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).withQueryParam("fields", equalTo("movie_id,name")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies-id-name.json")));
+
+//        when
+        List<MovieView> movies = moviesRestClient.retrieveAllMoviesProjected(EnumSet.of(MovieField.NAME, MovieField.MOVIE_ID));
+
+//        then
+        Assertions.assertEquals(10, movies.size());
+        Assertions.assertEquals(1L, movies.get(0).getMovieId().longValue());
+        Assertions.assertEquals("Batman Begins", movies.get(0).getName());
+        Assertions.assertNull(movies.get(0).getCast());
+        Assertions.assertFalse(movies.get(0).has(MovieField.CAST));
+    }
+
+    @Test
+    void retrieveAllMoviesProjected_serviceIgnoresFields(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.GET_ALL_MOVIES_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("all-movies.json")));
+
+//        when
+        List<MovieView> movies = moviesRestClient.retrieveAllMoviesProjected(EnumSet.of(MovieField.NAME));
+
+//        then
+        Assertions.assertEquals(10, movies.size());
+        Assertions.assertEquals("Dark Knight", movies.get(1).getName());
+        Assertions.assertNull(movies.get(1).getMovieId());
+        Assertions.assertNull(movies.get(1).getReleaseDate());
+    }
+
+    @Test
+    void retrieveMovieByYearProjected_responseTemplating(){
+//        given
+        Integer year = 2012;
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).
+                withQueryParam("year", equalTo(year.toString())).
+                withQueryParam("fields", equalTo("movie_id,name,year")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-projected-template.json")));
+
+//        when
+        List<MovieView> movies = moviesRestClient.retrieveMovieByYearProjected(year,
+                EnumSet.of(MovieField.MOVIE_ID, MovieField.NAME, MovieField.YEAR));
+
+//        then
+        Assertions.assertEquals(2, movies.size());
+        Assertions.assertEquals(2012, movies.get(1).getYear().intValue());
+        Assertions.assertEquals("The Avengers", movies.get(1).getName());
+    }
+
+    @Test
+    void retrieveMovieByYearProjected_notFound(){
+//        given
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieyear.json")));
+
+//        when
+//        then
+        Assertions.assertThrows(MovieErrorResponse.class,
+                () -> moviesRestClient.retrieveMovieByYearProjected(1950, EnumSet.of(MovieField.NAME)));
+    }
+
+    @Test
+    void tryRetrieveMovieById(){
+//        given
+        Integer movieId = 9;
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json")));
+
+//        when
+        MovieResult<Movie> result = moviesRestClient.tryRetrieveMovieById(movieId);
+
+//        then
+        Assertions.assertTrue(result.isSuccess());
+        Assertions.assertEquals(9, result.getValue().getMovie_id().intValue());
+    }
+
+    @Test
+    void tryRetrieveMovieById_notFound(){
+//        given
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.NOT_FOUND.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("404-movieid.json")));
+
+//        when
+        MovieResult<Movie> result = moviesRestClient.tryRetrieveMovieById(100);
+
+//        then
+        Assertions.assertFalse(result.isSuccess());
+        MovieFailure failure = result.getFailure();
+        Assertions.assertEquals(MovieFailure.Kind.NOT_FOUND, failure.getKind());
+        Assertions.assertEquals(404, failure.getStatusCode());
+        Assertions.assertTrue(failure.getResponseBody().contains("No Movie Available with the given Id"));
+        Assertions.assertEquals(0, failure.getStackTrace().length);
+        Assertions.assertSame(failure, Assertions.assertThrows(MovieFailure.class, result::getValue));
+    }
+
+    @Test
+    void tryAddMovie_serverError(){
+//        given
+        stubFor(post(urlPathEqualTo(MoviesAppConstants.ADD_MOVIE_V1)).
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+        Movie movie = new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20));
+
+//        when
+        MovieResult<Movie> result = moviesRestClient.tryAddMovie(movie);
+
+//        then
+        Assertions.assertEquals(MovieFailure.Kind.SERVER_ERROR, result.getFailure().getKind());
+        Assertions.assertEquals(503, result.getFailure().getStatusCode());
+        Assertions.assertNull(result.orElse(null));
+    }
+
+    @Test
+    void tryAddMovie_nullMovie(){
+//        when
+        MovieResult<Movie> result = moviesRestClient.tryAddMovie(null);
+
+//        then
+        Assertions.assertEquals(MovieFailure.Kind.REJECTED, result.getFailure().getKind());
+        verify(exactly(0), postRequestedFor(urlPathEqualTo(MoviesAppConstants.ADD_MOVIE_V1)));
+    }
+
+    @Test
+    void tryRetrieveMovieById_nullId(){
+//        given
+        moviesRestClient = new MoviesRestClient(webClient, new MovieCache(Duration.ofMinutes(1)));
+
+//        when
+        MovieResult<Movie> result = moviesRestClient.tryRetrieveMovieById(null);
+
+//        then
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertEquals(MovieFailure.Kind.REJECTED, result.getFailure().getKind());
+    }
+
+    @Test
+    void errorLogSampler_suppressesBeyondLimit(){
+//        given
+        ErrorLogSampler sampler = new ErrorLogSampler(2, Duration.ofMinutes(1).toNanos());
+
+//        when
+        long first = sampler.tryLog("retrieveMovieById");
+        sampler.tryLog("retrieveMovieById");
+        long third = sampler.tryLog("retrieveMovieById");
+        long otherOperation = sampler.tryLog("addMovie");
+
+//        then
+        Assertions.assertEquals(0, first);
+        Assertions.assertEquals(ErrorLogSampler.SUPPRESSED, third);
+        Assertions.assertEquals(0, otherOperation);
+    }
+
+    @Test
+    void updateCoalescer_failsUpdatesAfterShutdown(){
+//        given
+        UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ofMillis(50).toNanos(), (movieId, movie) -> Mono.just(movie));
+        coalescer.shutdown();
+        Movie movie = new Movie(null, null, "ABC", null, null);
+
+//        when
+        CompletableFuture<Movie> update = coalescer.update(3, movie);
+
+//        then
+        CompletionException failure = Assertions.assertThrows(CompletionException.class, update::join);
+        Assertions.assertEquals(MovieFailure.Kind.REJECTED, ((MovieFailure) failure.getCause()).getKind());
+        Assertions.assertTrue(coalescer.drain(3).isDone());
+    }
+
+    @Test
+    void updateMovie_coalescedWithinWindow(){
+//        given
+        Integer movieId = 3;
+        moviesRestClient.setUpdateCoalescingWindow(Duration.ofMillis(200));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json")));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+
+//        when
+        List<CompletableFuture<Movie>> updates = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            updates.add(moviesRestClient.updateMovieAsync(movieId, new Movie(null, null, "Draft " + i, null, null)));
+        }
+        String deleted = moviesRestClient.deleteMovie(movieId);
+
+//        then
+        Assertions.assertEquals("Movie Deleted Successfully", deleted);
+        for (CompletableFuture<Movie> update : updates) {
+            Assertions.assertTrue(update.join().getCast().contains("Draft 5"));
+        }
+        Assertions.assertEquals(4, moviesRestClient.getCoalescedUpdateCount());
+        verify(exactly(1), putRequestedFor(urlPathEqualTo("/movieservice/v1/movie/3")).
+                withRequestBody(matchingJsonPath("$.cast", equalTo("Draft 5"))));
+        verify(exactly(1), putRequestedFor(urlPathEqualTo("/movieservice/v1/movie/3")));
+        List<ServeEvent> served = getAllServeEvents();
+        // serve events are listed newest first
+        Assertions.assertEquals("DELETE", served.get(0).getRequest().getMethod().getName());
+        Assertions.assertEquals("PUT", served.get(1).getRequest().getMethod().getName());
+    }
+
+    @Test
+    void updateMovie_coalescedFailureReachesEveryCaller(){
+//        given
+        Integer movieId = 3;
+        moviesRestClient.setUpdateCoalescingWindow(Duration.ofMillis(100));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(serverError().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+
+//        when
+        CompletableFuture<Movie> first = moviesRestClient.updateMovieAsync(movieId, new Movie(null, null, "Draft 1", null, null));
+        MovieResult<Movie> second = moviesRestClient.tryUpdateMovie(movieId, new Movie(null, null, "Draft 2", null, null));
+
+//        then
+        CompletionException firstFailure = Assertions.assertThrows(CompletionException.class, first::join);
+        Assertions.assertTrue(firstFailure.getCause() instanceof MovieErrorResponse);
+        Assertions.assertEquals(503, second.getFailure().getStatusCode());
+        Assertions.assertThrows(MovieErrorResponse.class, () -> moviesRestClient.updateMovie(movieId, new Movie(null, null, "Draft 3", null, null)));
+        verify(exactly(2), putRequestedFor(urlPathEqualTo("/movieservice/v1/movie/3")));
+    }
+
+    @Test
+    void updateMovie_coalescedSendKeepsCallersDeadline(){
+//        given
+        moviesRestClient.setUpdateCoalescingWindow(Duration.ofMillis(50));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json").
+                        withFixedDelay(1000)));
+
+//        when
+        long start = System.nanoTime();
+        CompletableFuture<Movie> update = Deadline.within(Duration.ofMillis(300),
+                () -> moviesRestClient.updateMovieAsync(3, new Movie(null, null, "Draft 1", null, null)));
+        CompletionException failure = Assertions.assertThrows(CompletionException.class, update::join);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertTrue(elapsedMillis < 800, "took " + elapsedMillis + " ms");
+        Assertions.assertTrue(failure.getCause().getMessage().startsWith("Deadline of 300 ms exceeded"));
+    }
+
+    @Test
+    void deleteMovie_waitForPendingUpdateBoundedByDeadline(){
+//        given
+        moviesRestClient.setUpdateCoalescingWindow(Duration.ofMillis(50));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json").
+                        withFixedDelay(1000)));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+        CompletableFuture<Movie> update = moviesRestClient.updateMovieAsync(3, new Movie(null, null, "Draft 1", null, null));
+
+//        when
+        long start = System.nanoTime();
+        MovieErrorResponse movieErrorResponse = Assertions.assertThrows(MovieErrorResponse.class,
+                () -> moviesRestClient.deleteMovie(3, Duration.ofMillis(200)));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+//        then
+        Assertions.assertTrue(elapsedMillis < 800, "took " + elapsedMillis + " ms");
+        Assertions.assertEquals("Deadline of 200 ms exceeded waiting for deleteMovie", movieErrorResponse.getMessage());
+        Assertions.assertTrue(update.join().getCast().contains("Draft 1"));
+        verify(exactly(0), deleteRequestedFor(urlPathEqualTo("/movieservice/v1/movie/3")));
+    }
+
+    @Test
+    void deleteMovie_concurrentDeleteSentAfterPendingUpdate(){
+//        given
+        moviesRestClient.setUpdateCoalescingWindow(Duration.ofMillis(100));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json").
+                        withFixedDelay(100)));
+        stubFor(delete(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withBody("Movie Deleted Successfully")));
+
+//        when
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+        for (int movieId = 1; movieId <= 5; movieId++) {
+            Integer id = movieId;
+            calls.add(moviesRestClient.updateMovieAsync(id, new Movie(null, null, "Draft " + id, null, null)));
+            // the deletes race the window closing, some before it and some after
+            long raceMillis = 40L + 20 * id;
+            calls.add(CompletableFuture.runAsync(() -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(raceMillis));
+                moviesRestClient.deleteMovie(id);
+            }));
+        }
+        calls.forEach(CompletableFuture::join);
+
+//        then
+        List<ServeEvent> served = getAllServeEvents();
+        for (int movieId = 1; movieId <= 5; movieId++) {
+            String url = "/movieservice/v1/movie/" + movieId;
+            ServeEvent put = served.stream().filter(event -> event.getRequest().getUrl().equals(url)
+                    && event.getRequest().getMethod().getName().equals("PUT")).findFirst().get();
+            ServeEvent delete = served.stream().filter(event -> event.getRequest().getUrl().equals(url)
+                    && event.getRequest().getMethod().getName().equals("DELETE")).findFirst().get();
+            Assertions.assertTrue(put.getRequest().getLoggedDate().before(delete.getRequest().getLoggedDate()), url);
+        }
+    }
+
+    @Test
+    void updateMovie_coalescedSendKeepsCallersPriority(){
+//        given
+        moviesRestClient.setBulkWebClient(WebClient.builder().baseUrl(wireMockServer.baseUrl()).defaultHeader("X-Lane", "bulk").build());
+        moviesRestClient.setUpdateCoalescingWindow(Duration.ofMillis(50));
+        stubFor(put(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("update-movie-template.json")));
+
+//        when
+        Priority.BULK.call(() -> moviesRestClient.updateMovie(3, new Movie(null, null, "Draft 1", null, null)));
+
+//        then
+        verify(exactly(1), putRequestedFor(urlPathEqualTo("/movieservice/v1/movie/3")).withHeader("X-Lane", equalTo("bulk")));
+    }
+
+    @Test
+    void movieJsonEncoder_matchesJackson() throws IOException {
+//        given
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        List<Movie> movies = new ArrayList<>();
+        movies.add(new Movie(null, "Toys Story 4", "Tom Hanks, Tim Allen", 2019, LocalDate.of(2019, 06, 20)));
+        movies.add(new Movie(7L, null, null, null, null));
+        movies.add(new Movie(-1L, "Quote \" and \\ slash / tab \t", "Am\u00e9lie, \u5343\u3068\u5343\u5c0b, \ud83c\udfac", 1, LocalDate.of(-5, 12, 31)));
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int c = random.nextInt(40); c > 0; c--) {
+                int kind = random.nextInt(4);
+                name.append(kind == 0 ? (char) random.nextInt(0x20) : kind == 1 ? (char) (0x20 + random.nextInt(0x60))
+                        : kind == 2 ? (char) (0xA0 + random.nextInt(0xD000)) : "\ud83c\udf7f");
+            }
+            movies.add(new Movie((long) random.nextInt(), name.toString(), name.reverse().toString(), random.nextInt(3000),
+                    LocalDate.ofEpochDay(random.nextInt(40000))));
+        }
+
+//        when
+//        then
+        for (Movie movie : movies) {
+            Assertions.assertArrayEquals(objectMapper.writeValueAsBytes(movie), MovieJsonEncoder.encode(movie), movie.toString());
+        }
+    }
+}
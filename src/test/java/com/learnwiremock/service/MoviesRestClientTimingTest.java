@@ -0,0 +1,141 @@
+package com.learnwiremock.service;
+
+import com.github.jenspiegsa.wiremockextension.ConfigureWireMock;
+import com.github.jenspiegsa.wiremockextension.InjectServer;
+import com.github.jenspiegsa.wiremockextension.WireMockExtension;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.learnwiremock.constants.MoviesAppConstants;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.timing.LatencyHistogram;
+import com.learnwiremock.timing.PhaseHistograms;
+import com.learnwiremock.timing.PhaseTiming;
+import com.learnwiremock.timing.RequestPhase;
+import com.learnwiremock.timing.RequestTimings;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+@ExtendWith(WireMockExtension.class)
+public class MoviesRestClientTimingTest {
+
+    MoviesRestClient moviesRestClient;
+    PhaseHistograms histograms;
+    List<RequestTimings> timed;
+
+    @InjectServer
+    WireMockServer wireMockServer;
+
+    @ConfigureWireMock
+    Options options = wireMockConfig().port(8088).
+            notifier(new ConsoleNotifier(true)).
+            extensions(new ResponseTemplateTransformer(true));
+
+    @BeforeEach
+    void setUp(){
+        int port = wireMockServer.port();
+        String baseURL = String.format("http://localhost:%s", port);
+        moviesRestClient = new MoviesRestClient(PhaseTiming.webClient(baseURL));
+        histograms = new PhaseHistograms();
+        timed = new CopyOnWriteArrayList<>();
+        moviesRestClient.setPhaseTimingListener((endpoint, timings) -> {
+            timed.add(timings);
+            histograms.onTimed(endpoint, timings);
+        }, 1);
+    }
+
+    @Test
+    void retrieveMovieByYear_phasesAddUp() throws InterruptedException {
+//        given
+        Integer year = 2012;
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json").
+                        withFixedDelay(300)));
+
+//        when
+        List<Movie> movieList = moviesRestClient.retrieveMovieByYear(year);
+        // the connection goes back to the pool shortly after the body was read
+        Thread.sleep(100);
+        moviesRestClient.retrieveMovieByYear(year);
+        awaitTimed(2);
+
+//        then
+        Assertions.assertEquals(2, movieList.size());
+        LatencyHistogram timeToFirstByte = histograms.histogram(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1, RequestPhase.TIME_TO_FIRST_BYTE);
+        Assertions.assertEquals(2, timeToFirstByte.getCount());
+        Assertions.assertTrue(timeToFirstByte.getPercentileNanos(50) >= TimeUnit.MILLISECONDS.toNanos(300));
+        Assertions.assertTrue(timed.get(0).isNewConnection());
+        Assertions.assertFalse(timed.get(1).isNewConnection());
+        for (RequestTimings timings : timed) {
+            long phases = 0;
+            for (RequestPhase phase : RequestPhase.values()) {
+                if (phase != RequestPhase.TOTAL) {
+                    Assertions.assertTrue(timings.get(phase) >= 0, phase + " was not timed");
+                    phases += timings.get(phase);
+                }
+            }
+            Assertions.assertTrue(timings.get(RequestPhase.DECODE) > 0);
+            Assertions.assertTrue(phases <= timings.get(RequestPhase.TOTAL));
+        }
+    }
+
+    @Test
+    void retrieveMovieById_failedExchangeIsStillTimed() throws InterruptedException {
+//        given
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+
+//        when
+        Assertions.assertThrows(RuntimeException.class, () -> moviesRestClient.retrieveMovieById(1));
+        awaitTimed(1);
+
+//        then
+        RequestTimings timings = timed.get(0);
+        Assertions.assertTrue(timings.get(RequestPhase.TIME_TO_FIRST_BYTE) >= 0);
+        Assertions.assertTrue(timings.get(RequestPhase.TOTAL) > 0);
+    }
+
+    @Test
+    void latencyHistogram_percentilesWithinBucketError(){
+//        given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+//        when
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+//        then
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMaxNanos());
+        long p50 = histogram.getPercentileNanos(50);
+        long p99 = histogram.getPercentileNanos(99);
+        Assertions.assertTrue(p50 >= TimeUnit.MICROSECONDS.toNanos(500) && p50 <= TimeUnit.MICROSECONDS.toNanos(500) * 9 / 8, "p50 " + p50);
+        Assertions.assertTrue(p99 >= TimeUnit.MICROSECONDS.toNanos(990) && p99 <= TimeUnit.MICROSECONDS.toNanos(1000), "p99 " + p99);
+    }
+
+    // the listener runs once the exchange has signalled its result, which can be after block() returned
+    private void awaitTimed(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && timed.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
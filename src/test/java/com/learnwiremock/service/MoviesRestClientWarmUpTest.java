@@ -0,0 +1,159 @@
+package com.learnwiremock.service;
+
+import com.github.jenspiegsa.wiremockextension.ConfigureWireMock;
+import com.github.jenspiegsa.wiremockextension.InjectServer;
+import com.github.jenspiegsa.wiremockextension.WireMockExtension;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.learnwiremock.cache.MovieCache;
+import com.learnwiremock.constants.MoviesAppConstants;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.WarmUpReport;
+import com.learnwiremock.index.ActorIndex;
+import com.learnwiremock.resilience.Lane;
+import com.learnwiremock.timing.RequestPhase;
+import com.learnwiremock.timing.RequestTimings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+@ExtendWith(WireMockExtension.class)
+public class MoviesRestClientWarmUpTest {
+
+    Lane coldLane;
+    Lane warmLane;
+
+    @InjectServer
+    WireMockServer wireMockServer;
+
+    @ConfigureWireMock
+    Options options = wireMockConfig().port(8088).
+            notifier(new ConsoleNotifier(true)).
+            extensions(new ResponseTemplateTransformer(true));
+
+    @BeforeEach
+    void setUp(){
+        int port = wireMockServer.port();
+        String baseURL = String.format("http://localhost:%s", port);
+        // lanes have event loops and pools of their own, so neither client starts on warm resources
+        coldLane = new Lane("cold", baseURL, 4, 1);
+        warmLane = new Lane("warm", baseURL, 4, 1);
+        stubFor(get(urlPathMatching("/movieservice/v1/movie/[0-9]+")).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-template.json")));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("movie-byName-template.json")));
+        stubFor(get(urlPathEqualTo(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1)).
+                willReturn(WireMock.aResponse().
+                        withStatus(HttpStatus.OK.value()).
+                        withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).
+                        withBodyFile("year-template.json")));
+    }
+
+    @AfterEach
+    void tearDown(){
+        coldLane.close();
+        warmLane.close();
+    }
+
+    @Test
+    void warmUp_firstRequestLatency(){
+//        given
+        MoviesRestClient coldClient = new MoviesRestClient(coldLane.webClient());
+        MoviesRestClient warmClient = new MoviesRestClient(warmLane.webClient());
+        WarmUpReport report = warmClient.warmUp(4, 6);
+        List<RequestTimings> coldTimings = new CopyOnWriteArrayList<>();
+        List<RequestTimings> warmTimings = new CopyOnWriteArrayList<>();
+        coldClient.setPhaseTimingListener((endpoint, timings) -> coldTimings.add(timings), 1);
+        warmClient.setPhaseTimingListener((endpoint, timings) -> warmTimings.add(timings), 1);
+
+//        when
+        long coldStart = System.nanoTime();
+        Movie cold = coldClient.retrieveMovieById(1);
+        long coldNanos = System.nanoTime() - coldStart;
+        long warmStart = System.nanoTime();
+        Movie warm = warmClient.retrieveMovieById(1);
+        long warmNanos = System.nanoTime() - warmStart;
+
+//        then
+        Assertions.assertEquals(cold, warm);
+        Assertions.assertFalse(report.getElapsed().isNegative() || report.getElapsed().isZero());
+        Assertions.assertTrue(report.getElapsed().compareTo(Duration.ofSeconds(5)) < 0, report.toString());
+        Assertions.assertEquals(4, report.getConnectionsOpened());
+        Assertions.assertEquals(6, report.getSyntheticRequests());
+        Assertions.assertEquals(0, report.getSyntheticFailures());
+        awaitTimed(coldTimings);
+        awaitTimed(warmTimings);
+        Assertions.assertTrue(coldTimings.get(0).isNewConnection());
+        Assertions.assertFalse(warmTimings.get(0).isNewConnection());
+        Assertions.assertTrue(warmTimings.get(0).get(RequestPhase.ACQUIRE) < coldTimings.get(0).get(RequestPhase.ACQUIRE));
+        Assertions.assertTrue(warmTimings.get(0).get(RequestPhase.TOTAL) < coldTimings.get(0).get(RequestPhase.TOTAL));
+        Assertions.assertTrue(warmNanos < coldNanos, "warm " + warmNanos + " ns, cold " + coldNanos + " ns");
+    }
+
+    @Test
+    void warmUp_leavesCacheAndIndexUntouched(){
+//        given
+        MovieCache movieCache = new MovieCache(Duration.ofMinutes(1));
+        ActorIndex actorIndex = new ActorIndex();
+        MoviesRestClient moviesRestClient = new MoviesRestClient(warmLane.webClient(), movieCache);
+        moviesRestClient.setActorIndex(actorIndex);
+        moviesRestClient.enablePrefetching(2);
+
+//        when
+        WarmUpReport report = moviesRestClient.warmUp(1, 6);
+
+//        then
+        Assertions.assertEquals(0, report.getSyntheticFailures());
+        Assertions.assertEquals(0, movieCache.size());
+        Assertions.assertEquals(0, moviesRestClient.getPrefetcher().getSeededCount());
+        Assertions.assertEquals(0, moviesRestClient.getPrefetcher().getFetchedCount());
+        Assertions.assertEquals(0, actorIndex.movieCount());
+    }
+
+    @Test
+    void warmUp_unreachableServiceDoesNotThrow(){
+//        given
+        MoviesRestClient moviesRestClient = new MoviesRestClient(coldLane.webClient());
+        wireMockServer.stop();
+
+//        when
+        WarmUpReport report = moviesRestClient.warmUp(2, 3);
+
+//        then
+        Assertions.assertEquals(0, report.getConnectionsOpened());
+        Assertions.assertEquals(3, report.getSyntheticFailures());
+    }
+
+    // the listener runs once the exchange has signalled its result, which can be after block() returned
+    private static void awaitTimed(List<RequestTimings> timed){
+        for (int i = 0; i < 100 && timed.isEmpty(); i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
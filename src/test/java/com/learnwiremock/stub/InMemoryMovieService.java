@@ -0,0 +1,456 @@
+package com.learnwiremock.stub;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.QueryParameter;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.dto.MovieField;
+import com.learnwiremock.dto.MovieValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+
+/**
+ * Stateful stand-in for the /movieservice/v1 API, plugged into WireMock as a response transformer.
+ * Adds, updates and deletes are seen by later reads. Seeded movies are generated from their id on
+ * demand and only writes are stored, so millions of seeded movies cost no memory until touched.
+ *
+ * <pre>
+ *     InMemoryMovieService movieService = new InMemoryMovieService();
+ *     WireMockServer server = new WireMockServer(wireMockConfig().dynamicPort().extensions(movieService));
+ *     server.stubFor(InMemoryMovieService.mapping());
+ *     movieService.seed(1_000_000, 42);
+ * </pre>
+ */
+public class InMemoryMovieService extends ResponseDefinitionTransformer {
+
+    public static final String NAME = "in-memory-movie-service";
+
+    private static final String BASE_PATH = "/movieservice/v1/";
+    private static final int FIRST_YEAR = 1950;
+    private static final int YEARS = 75;
+    private static final Set<MovieField> ALL_FIELDS = EnumSet.allOf(MovieField.class);
+
+    private static final String[] TITLE_WORDS = {"Dark", "Silent", "Last", "Golden", "Broken", "Hidden",
+            "Iron", "Midnight", "Frozen", "Wild", "Crimson", "Lost"};
+    private static final String[] TITLE_NOUNS = {"Knight", "River", "Empire", "Promise", "Horizon", "Garden",
+            "Signal", "Harbor", "Voyage", "Kingdom", "Witness", "Storm"};
+    private static final String[] CASTS = {
+            "Christian Bale, Heath Ledger , Michael Caine",
+            "Robert Downey Jr, Chris Evans , Chris HemsWorth",
+            "Bradley Cooper, Ed Helms , Zach Galifianakis",
+            "Benedict Cumberbatch, Keira Knightley",
+            "Leonardo DiCaprio, Matt Damon , Mark Wahlberg",
+            "Tom Hanks, Tim Allen",
+            "Christian Bale, Katie Holmes , Liam Neeson"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule()).
+            disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    // ids 1..seeded are generated; written holds adds and updates, deleted the removed seeded ids
+    private volatile long seeded;
+    private volatile long randomSeed;
+    private final ConcurrentSkipListMap<Long, MovieValue> written = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListSet<Long> deleted = new ConcurrentSkipListSet<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final LongAdder requests = new LongAdder();
+
+    public static MappingBuilder mapping() {
+        return any(urlPathMatching("/movieservice/v1/.*")).willReturn(aResponse().withTransformers(NAME));
+    }
+
+    /**
+     * Replaces the whole catalogue with {@code count} generated movies, ids 1 to {@code count}.
+     */
+    public synchronized void seed(long count, long randomSeed) {
+        written.clear();
+        deleted.clear();
+        this.randomSeed = randomSeed;
+        this.seeded = count;
+        nextId.set(count + 1);
+    }
+
+    public MovieValue movie(long movieId) {
+        MovieValue movie = written.get(movieId);
+        if (movie != null) {
+            return movie;
+        }
+        if (movieId < 1 || movieId > seeded || deleted.contains(movieId)) {
+            return null;
+        }
+        return generate(movieId);
+    }
+
+    public long size() {
+        return seeded - deleted.size() + written.tailMap(seeded, false).size();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean applyGlobally() {
+        return false;
+    }
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files,
+                                        Parameters parameters) {
+        requests.increment();
+        String path = request.getUrl();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (!path.startsWith(BASE_PATH)) {
+            return error(404, "Not Found", "No such endpoint", path);
+        }
+        String resource = path.substring(BASE_PATH.length());
+        try {
+            RequestMethod method = request.getMethod();
+            if (resource.equals("allMovies") && method.equals(RequestMethod.GET)) {
+                return allMovies(request);
+            }
+            if (resource.equals("movieYear") && method.equals(RequestMethod.GET)) {
+                return moviesByYear(request, path);
+            }
+            if (resource.equals("movieName") && method.equals(RequestMethod.GET)) {
+                return moviesByName(request, path);
+            }
+            if (resource.equals("movieName") && method.equals(RequestMethod.DELETE)) {
+                return deleteByName(request, path);
+            }
+            if (resource.equals("movie") && method.equals(RequestMethod.POST)) {
+                return add(request, path);
+            }
+            if (resource.startsWith("movie/")) {
+                long movieId = Long.parseLong(resource.substring("movie/".length()));
+                if (method.equals(RequestMethod.GET)) {
+                    MovieValue movie = movie(movieId);
+                    return movie == null ? notFound("Id - " + movieId, path) : json(write(movie, ALL_FIELDS));
+                }
+                if (method.equals(RequestMethod.PUT)) {
+                    return update(movieId, request, path);
+                }
+                if (method.equals(RequestMethod.DELETE)) {
+                    return delete(movieId) ? text("Movie Deleted Successfully") : notFound("Id - " + movieId, path);
+                }
+            }
+            return error(405, "Method Not Allowed", method + " is not supported", path);
+        } catch (NumberFormatException ex) {
+            return error(400, "Bad Request", ex.getMessage(), path);
+        }
+    }
+
+    private ResponseDefinition allMovies(Request request) {
+        QueryParameter page = request.queryParameter("page");
+        long offset = 0;
+        int limit = Integer.MAX_VALUE;
+        if (page.isPresent()) {
+            limit = Integer.parseInt(param(request, "size", "100"));
+            offset = Long.parseLong(page.firstValue()) * limit;
+        }
+        return json(writeList(page(offset, limit), fields(request)));
+    }
+
+    private ResponseDefinition moviesByYear(Request request, String path) {
+        int year = Integer.parseInt(param(request, "year", ""));
+        List<MovieValue> movies = new ArrayList<>();
+        int slot = year - FIRST_YEAR;
+        if (slot >= 0 && slot < YEARS) {
+            for (long id = slot + 1; id <= seeded; id += YEARS) {
+                MovieValue movie = movie(id);
+                if (movie != null && movie.getYear() != null && year == movie.getYear()) {
+                    movies.add(movie);
+                }
+            }
+        }
+        for (MovieValue movie : written.values()) {
+            // seeded ids whose update moved them into this year are not found by the stride above
+            boolean outsideStride = movie.getMovieId() > seeded || (movie.getMovieId() - 1) % YEARS != slot;
+            if (outsideStride && movie.getYear() != null && year == movie.getYear()) {
+                movies.add(movie);
+            }
+        }
+        if (movies.isEmpty()) {
+            return notFound("year - " + year, path);
+        }
+        return json(writeList(movies, fields(request)));
+    }
+
+    // a scan over every movie, the price of keeping seeded movies virtual
+    private ResponseDefinition moviesByName(Request request, String path) {
+        String name = param(request, "movie_name", "");
+        List<MovieValue> movies = new ArrayList<>();
+        forEachMovie(movie -> {
+            if (movie.getName() != null && movie.getName().contains(name)) {
+                movies.add(movie);
+            }
+        });
+        if (movies.isEmpty()) {
+            return notFound("name - " + name, path);
+        }
+        return json(writeList(movies, ALL_FIELDS));
+    }
+
+    private ResponseDefinition deleteByName(Request request, String path) {
+        String name = param(request, "movie_name", "");
+        List<Long> matching = new ArrayList<>();
+        forEachMovie(movie -> {
+            if (name.equals(movie.getName())) {
+                matching.add(movie.getMovieId());
+            }
+        });
+        boolean any = false;
+        for (long movieId : matching) {
+            any |= delete(movieId);
+        }
+        return any ? text("Movie Deleted Successfully") : notFound("name - " + name, path);
+    }
+
+    private ResponseDefinition add(Request request, String path) {
+        Movie movie = read(request);
+        if (movie == null || movie.getName() == null) {
+            return error(400, "Bad Request", "Please pass all the input fields : [name]", path);
+        }
+        long movieId = nextId.getAndIncrement();
+        MovieValue added = new MovieValue(movieId, movie.getName(), movie.getCast(), movie.getYear(), movie.getRelease_date());
+        written.put(movieId, added);
+        return json(write(added, ALL_FIELDS));
+    }
+
+    // like the real service, an update adds the given cast to the movie's cast
+    private ResponseDefinition update(long movieId, Request request, String path) {
+        Movie changes = read(request);
+        if (changes == null) {
+            return error(400, "Bad Request", "Please pass the movie to update", path);
+        }
+        synchronized (this) {
+            MovieValue movie = movie(movieId);
+            if (movie == null) {
+                return notFound("Id - " + movieId, path);
+            }
+            MovieValue updated = movie.toBuilder().
+                    name(changes.getName() != null ? changes.getName() : movie.getName()).
+                    cast(changes.getCast() == null ? movie.getCast()
+                            : movie.getCast() == null ? changes.getCast() : movie.getCast() + ", " + changes.getCast()).
+                    year(changes.getYear() != null ? changes.getYear() : movie.getYear()).
+                    releaseDate(changes.getRelease_date() != null ? changes.getRelease_date() : movie.getReleaseDate()).
+                    build();
+            written.put(movieId, updated);
+            return json(write(updated, ALL_FIELDS));
+        }
+    }
+
+    private synchronized boolean delete(long movieId) {
+        if (movie(movieId) == null) {
+            return false;
+        }
+        written.remove(movieId);
+        if (movieId <= seeded) {
+            deleted.add(movieId);
+        }
+        return true;
+    }
+
+    /**
+     * Live movies in id order: the seeded ids that were not deleted, then the added ones.
+     */
+    private List<MovieValue> page(long offset, int limit) {
+        List<MovieValue> movies = new ArrayList<>(Math.min(limit, 1024));
+        long liveSeeded = seeded - deleted.size();
+        if (offset < liveSeeded) {
+            for (long id = seededIdAt(offset); id <= seeded && movies.size() < limit; id++) {
+                MovieValue movie = movie(id);
+                if (movie != null) {
+                    movies.add(movie);
+                }
+            }
+        }
+        long skip = Math.max(0, offset - liveSeeded);
+        for (MovieValue movie : written.tailMap(seeded, false).values()) {
+            if (movies.size() >= limit) {
+                break;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    private void forEachMovie(Consumer<MovieValue> action) {
+        for (long id = 1; id <= seeded; id++) {
+            MovieValue movie = movie(id);
+            if (movie != null) {
+                action.accept(movie);
+            }
+        }
+        written.tailMap(seeded, false).values().forEach(action);
+    }
+
+    // smallest id with offset + 1 live seeded ids up to it, found without walking the seeded range
+    private long seededIdAt(long offset) {
+        long id = offset + 1;
+        while (true) {
+            long next = offset + 1 + deleted.headSet(id, true).size();
+            if (next == id) {
+                return id;
+            }
+            id = next;
+        }
+    }
+
+    private MovieValue generate(long movieId) {
+        long hash = mix(movieId ^ randomSeed);
+        int year = FIRST_YEAR + (int) ((movieId - 1) % YEARS);
+        String name = TITLE_WORDS[(int) ((hash >>> 8) % TITLE_WORDS.length)] + " " +
+                TITLE_NOUNS[(int) ((hash >>> 16) % TITLE_NOUNS.length)] + " " + movieId;
+        String cast = CASTS[(int) ((hash >>> 24) % CASTS.length)];
+        LocalDate releaseDate = LocalDate.of(year, 1 + (int) ((hash >>> 32) % 12), 1 + (int) ((hash >>> 40) % 28));
+        return new MovieValue(movieId, name, cast, year, releaseDate);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) >>> 1;
+    }
+
+    private Movie read(Request request) {
+        try {
+            return objectMapper.readValue(request.getBody(), Movie.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static String param(Request request, String name, String defaultValue) {
+        QueryParameter parameter = request.queryParameter(name);
+        return parameter.isPresent() ? parameter.firstValue() : defaultValue;
+    }
+
+    private static Set<MovieField> fields(Request request) {
+        QueryParameter parameter = request.queryParameter("fields");
+        if (!parameter.isPresent()) {
+            return ALL_FIELDS;
+        }
+        Set<MovieField> fields = EnumSet.noneOf(MovieField.class);
+        for (String name : parameter.firstValue().split(",")) {
+            MovieField field = MovieField.forJsonName(name.trim());
+            if (field != null) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private byte[] write(MovieValue movie, Set<MovieField> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            writeMovie(generator, movie, fields);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] writeList(List<MovieValue> movies, Set<MovieField> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + movies.size() * 160);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (MovieValue movie : movies) {
+                writeMovie(generator, movie, fields);
+            }
+            generator.writeEndArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeMovie(JsonGenerator generator, MovieValue movie, Set<MovieField> fields) throws IOException {
+        generator.writeStartObject();
+        if (fields.contains(MovieField.MOVIE_ID)) {
+            generator.writeNumberField("movie_id", movie.getMovieId());
+        }
+        if (fields.contains(MovieField.NAME)) {
+            generator.writeStringField("name", movie.getName());
+        }
+        if (fields.contains(MovieField.YEAR) && movie.getYear() != null) {
+            generator.writeNumberField("year", movie.getYear());
+        }
+        if (fields.contains(MovieField.CAST)) {
+            generator.writeStringField("cast", movie.getCast());
+        }
+        if (fields.contains(MovieField.RELEASE_DATE) && movie.getReleaseDate() != null) {
+            generator.writeStringField("release_date", movie.getReleaseDate().toString());
+        }
+        generator.writeEndObject();
+    }
+
+    private static ResponseDefinition json(byte[] body) {
+        return ResponseDefinitionBuilder.responseDefinition().
+                withStatus(200).
+                withHeader("Content-Type", "application/json").
+                withBody(body).
+                build();
+    }
+
+    private static ResponseDefinition text(String body) {
+        return ResponseDefinitionBuilder.responseDefinition().
+                withStatus(200).
+                withHeader("Content-Type", "text/plain").
+                withBody(body).
+                build();
+    }
+
+    private static ResponseDefinition notFound(String what, String path) {
+        return error(404, "Not Found", "No Movie Available with the given " + what, path);
+    }
+
+    private static ResponseDefinition error(int status, String error, String message, String path) {
+        String body = "{\"timestamp\":\"" + Instant.now() + "\",\"status\":" + status +
+                ",\"error\":\"" + error + "\",\"message\":\"" + message.replace("\"", "'") + "\",\"path\":\"" + path + "\"}";
+        return ResponseDefinitionBuilder.responseDefinition().
+                withStatus(status).
+                withHeader("Content-Type", "application/json").
+                withBody(body).
+                build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.learnwiremock.stub;
+
+import com.learnwiremock.timing.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of one {@link TrafficReplayer} run. Failures are calls that threw, whatever the recorded
+ * status was; skipped are recorded requests with no matching client call.
+ */
+public class ReplayReport {
+
+    private final Duration elapsed;
+    private final long completed;
+    private final long failed;
+    private final long skipped;
+    private final LatencyHistogram latencies;
+
+    public ReplayReport(Duration elapsed, long completed, long failed, long skipped, LatencyHistogram latencies) {
+        this.elapsed = elapsed;
+        this.completed = completed;
+        this.failed = failed;
+        this.skipped = skipped;
+        this.latencies = latencies;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public double getThroughputPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : (completed + failed) * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReplayReport(elapsed=%dms, completed=%d, failed=%d, skipped=%d, throughput=%.1f/s, " +
+                        "p50=%dus, p99=%dus, max=%dus)", elapsed.toMillis(), completed, failed, skipped, getThroughputPerSecond(),
+                micros(latencies.getPercentileNanos(50)), micros(latencies.getPercentileNanos(99)), micros(latencies.getMaxNanos()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
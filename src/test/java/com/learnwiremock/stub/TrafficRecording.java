@@ -0,0 +1,246 @@
+package com.learnwiremock.stub;
+
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.Gzip;
+import com.github.tomakehurst.wiremock.http.ContentTypeHeader;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.request;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+/**
+ * Request/response pairs captured from a WireMock server's serve events, typically one proxying to
+ * a real movie service, with when each request arrived and how long the answer took.
+ *
+ * <pre>
+ *     TrafficRecording recording = TrafficRecording.capture(wireMockServer.getAllServeEvents());
+ *     recording.writeTo(Paths.get("build/traffic/catalogue-browse.rec"));
+ * </pre>
+ *
+ * The fixture file is gzipped and stores every distinct url and body once, so long recordings of
+ * the same few lookups stay small.
+ */
+public class TrafficRecording {
+
+    private static final int MAGIC = 0x4D565243;
+    private static final int VERSION = 1;
+
+    private final List<Exchange> exchanges;
+
+    public TrafficRecording(List<Exchange> exchanges) {
+        this.exchanges = Collections.unmodifiableList(new ArrayList<>(exchanges));
+    }
+
+    /**
+     * The exchanges of the events in the order their requests arrived, timed from the first one.
+     */
+    public static TrafficRecording capture(List<ServeEvent> serveEvents) {
+        List<ServeEvent> events = new ArrayList<>(serveEvents);
+        // WireMock lists the newest event first
+        events.sort(Comparator.comparing(event -> event.getRequest().getLoggedDate()));
+        List<Exchange> exchanges = new ArrayList<>(events.size());
+        long first = events.isEmpty() ? 0 : events.get(0).getRequest().getLoggedDate().getTime();
+        for (ServeEvent event : events) {
+            if (event.getResponse() == null) {
+                continue;
+            }
+            ContentTypeHeader contentTypeHeader = event.getResponse().getHeaders() == null ? ContentTypeHeader.absent()
+                    : event.getResponse().getHeaders().getContentTypeHeader();
+            String contentType = contentTypeHeader.isPresent() ? contentTypeHeader.firstValue() : null;
+            // proxied answers are logged as they went over the wire, the fixture keeps them decoded
+            byte[] body = event.getResponse().getBody();
+            String responseBody = body == null ? null
+                    : Gzip.isGzipped(body) ? Gzip.unGzipToString(body) : event.getResponse().getBodyAsString();
+            exchanges.add(new Exchange(event.getRequest().getLoggedDate().getTime() - first,
+                    event.getRequest().getMethod().getName(), event.getRequest().getUrl(),
+                    event.getRequest().getBodyAsString(), event.getResponse().getStatus(), contentType,
+                    responseBody, event.getTiming() == null ? 0 : event.getTiming().getTotalTime()));
+        }
+        return new TrafficRecording(exchanges);
+    }
+
+    public static TrafficRecording readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a traffic recording");
+            }
+            int count = in.readInt();
+            List<String> strings = new ArrayList<>();
+            List<Exchange> exchanges = new ArrayList<>(count);
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                offset += in.readInt();
+                exchanges.add(new Exchange(offset, readString(in, strings), readString(in, strings), readString(in, strings),
+                        in.readShort(), readString(in, strings), readString(in, strings), in.readInt()));
+            }
+            return new TrafficRecording(exchanges);
+        }
+    }
+
+    public void writeTo(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(exchanges.size());
+            Map<String, Integer> strings = new HashMap<>();
+            long previous = 0;
+            for (Exchange exchange : exchanges) {
+                // offsets are written as deltas, which stay far below the int range
+                out.writeInt((int) (exchange.getOffsetMillis() - previous));
+                previous = exchange.getOffsetMillis();
+                writeString(out, strings, exchange.getMethod());
+                writeString(out, strings, exchange.getUrl());
+                writeString(out, strings, exchange.getRequestBody());
+                out.writeShort(exchange.getStatus());
+                writeString(out, strings, exchange.getContentType());
+                writeString(out, strings, exchange.getResponseBody());
+                out.writeInt(exchange.getServeMillis());
+            }
+        }
+    }
+
+    /**
+     * Stubs answering every recorded request with its recorded response, delayed by the recorded
+     * serve time divided by {@code speed}. A request recorded more than once gets its last answer.
+     */
+    public List<MappingBuilder> stubs(double speed) {
+        Map<String, Exchange> latest = new LinkedHashMap<>();
+        for (Exchange exchange : exchanges) {
+            latest.put(exchange.getMethod() + " " + exchange.getUrl(), exchange);
+        }
+        List<MappingBuilder> stubs = new ArrayList<>(latest.size());
+        for (Exchange exchange : latest.values()) {
+            ResponseDefinitionBuilder response = aResponse().
+                    withStatus(exchange.getStatus()).
+                    withFixedDelay(speed > 0 ? (int) (exchange.getServeMillis() / speed) : 0);
+            if (exchange.getContentType() != null) {
+                response.withHeader("Content-Type", exchange.getContentType());
+            }
+            if (exchange.getResponseBody() != null) {
+                response.withBody(exchange.getResponseBody());
+            }
+            stubs.add(request(exchange.getMethod(), urlEqualTo(exchange.getUrl())).willReturn(response));
+        }
+        return stubs;
+    }
+
+    public List<Exchange> getExchanges() {
+        return exchanges;
+    }
+
+    public long getDurationMillis() {
+        return exchanges.isEmpty() ? 0 : exchanges.get(exchanges.size() - 1).getOffsetMillis();
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // a new string is its index, then its length and bytes
+        out.writeInt(strings.size() - 1);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        int index = in.readInt();
+        if (index == -1) {
+            return null;
+        }
+        if (index < strings.size()) {
+            return strings.get(index);
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+
+    public static final class Exchange {
+
+        private final long offsetMillis;
+        private final String method;
+        private final String url;
+        private final String requestBody;
+        private final int status;
+        private final String contentType;
+        private final String responseBody;
+        private final int serveMillis;
+
+        public Exchange(long offsetMillis, String method, String url, String requestBody, int status,
+                        String contentType, String responseBody, int serveMillis) {
+            this.offsetMillis = offsetMillis;
+            this.method = method;
+            this.url = url;
+            this.requestBody = requestBody == null || requestBody.isEmpty() ? null : requestBody;
+            this.status = status;
+            this.contentType = contentType;
+            this.responseBody = responseBody == null || responseBody.isEmpty() ? null : responseBody;
+            this.serveMillis = Math.max(serveMillis, 0);
+        }
+
+        public long getOffsetMillis() {
+            return offsetMillis;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getRequestBody() {
+            return requestBody;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getResponseBody() {
+            return responseBody;
+        }
+
+        public int getServeMillis() {
+            return serveMillis;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.learnwiremock.stub;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnwiremock.constants.MoviesAppConstants;
+import com.learnwiremock.dto.Movie;
+import com.learnwiremock.service.MoviesRestClient;
+import com.learnwiremock.timing.LatencyHistogram;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link TrafficRecording} back through a {@link MoviesRestClient}, each recorded request
+ * turned into the client call that makes it. Requests are started at their recorded offsets divided
+ * by the speed, whether or not earlier ones have finished, and their latency is counted from that
+ * intended start, so a client that falls behind shows it in the latencies instead of hiding it.
+ * A speed of 0 or less starts every request as soon as a thread is free.
+ *
+ * <pre>
+ *     ReplayReport report = new TrafficReplayer(moviesRestClient, 32).replay(recording, 1.0);
+ * </pre>
+ */
+public class TrafficReplayer {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule()).
+            disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final MoviesRestClient moviesRestClient;
+    private final int threads;
+
+    public TrafficReplayer(MoviesRestClient moviesRestClient, int threads) {
+        this.moviesRestClient = moviesRestClient;
+        this.threads = threads;
+    }
+
+    public ReplayReport replay(TrafficRecording recording, double speed) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder skipped = new LongAdder();
+        LatencyHistogram latencies = new LatencyHistogram();
+        boolean paced = speed > 0;
+        long start = System.nanoTime();
+        try {
+            for (TrafficRecording.Exchange exchange : recording.getExchanges()) {
+                Runnable call = clientCall(exchange);
+                if (call == null) {
+                    skipped.increment();
+                    continue;
+                }
+                long intendedStart = start + (paced ? (long) (TimeUnit.MILLISECONDS.toNanos(exchange.getOffsetMillis()) / speed) : 0);
+                for (long wait = intendedStart - System.nanoTime(); wait > 0; wait = intendedStart - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+                executor.execute(() -> {
+                    long callStart = paced ? intendedStart : System.nanoTime();
+                    try {
+                        call.run();
+                        completed.increment();
+                    } catch (RuntimeException ex) {
+                        failed.increment();
+                    }
+                    latencies.record(System.nanoTime() - callStart);
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        return new ReplayReport(Duration.ofNanos(System.nanoTime() - start), completed.sum(), failed.sum(), skipped.sum(), latencies);
+    }
+
+    /**
+     * The client call making the recorded request, or null when no single call makes it.
+     */
+    private Runnable clientCall(TrafficRecording.Exchange exchange) {
+        UriComponents url = UriComponentsBuilder.fromUriString(exchange.getUrl()).build();
+        String path = url.getPath();
+        MultiValueMap<String, String> query = url.getQueryParams();
+        if (path == null) {
+            return null;
+        }
+        try {
+            return clientCall(exchange, path, query);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private Runnable clientCall(TrafficRecording.Exchange exchange, String path, MultiValueMap<String, String> query) {
+        switch (exchange.getMethod()) {
+            case "GET":
+                if (path.equals(MoviesAppConstants.GET_ALL_MOVIES_V1) && query.isEmpty()) {
+                    return moviesRestClient::retrieveAllMovies;
+                }
+                if (path.equals(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1) && query.containsKey("movie_name")) {
+                    String name = decode(query.getFirst("movie_name"));
+                    return () -> moviesRestClient.retrieveMovieByName(name);
+                }
+                if (path.equals(MoviesAppConstants.MOVIE_BY_YEAR_QUERY_PARAM_V1) && query.containsKey("year")) {
+                    Integer year = Integer.valueOf(query.getFirst("year"));
+                    return () -> moviesRestClient.retrieveMovieByYear(year);
+                }
+                if (path.startsWith(MoviesAppConstants.MOVIE_BY_ID_V1)) {
+                    Integer movieId = movieId(path);
+                    return () -> moviesRestClient.retrieveMovieById(movieId);
+                }
+                return null;
+            case "POST":
+                if (path.equals(MoviesAppConstants.ADD_MOVIE_V1)) {
+                    Movie movie = movie(exchange.getRequestBody());
+                    return () -> moviesRestClient.addMovie(movie);
+                }
+                return null;
+            case "PUT":
+                if (path.startsWith(MoviesAppConstants.MOVIE_BY_ID_V1)) {
+                    Integer movieId = movieId(path);
+                    Movie movie = movie(exchange.getRequestBody());
+                    return () -> moviesRestClient.updateMovie(movieId, movie);
+                }
+                return null;
+            case "DELETE":
+                if (path.equals(MoviesAppConstants.MOVIE_BY_NAME_QUERY_PARAM_V1) && query.containsKey("movie_name")) {
+                    String name = decode(query.getFirst("movie_name"));
+                    return () -> moviesRestClient.deleteMovieByName(name);
+                }
+                if (path.startsWith(MoviesAppConstants.MOVIE_BY_ID_V1)) {
+                    Integer movieId = movieId(path);
+                    return () -> moviesRestClient.deleteMovie(movieId);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static Integer movieId(String path) {
+        return Integer.valueOf(path.substring(MoviesAppConstants.MOVIE_BY_ID_V1.length()));
+    }
+
+    private static String decode(String value) {
+        return UriUtils.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private Movie movie(String body) {
+        try {
+            return body == null ? new Movie() : objectMapper.readValue(body, Movie.class);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Recorded body is not a movie: " + body, ex);
+        }
+    }
+}